@@ -0,0 +1,82 @@
+package se116.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ DELETE STATE, DELETE STATES and DELETE SYMBOL on large random machines.
+ Before every invocation a victim state (16 incoming edges), 16 such states or
+ a victim symbol (on 16 states) is added back, outside of the measurement.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeleteBenchmark {
+    private static final int FAN_IN = 16;
+
+    @Param({"1024", "65536"})
+    public int states;
+
+    private Fsm fsm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fsm = new Fsm();
+        fsm.processAll(Machines.define(Machines.Shape.RANDOM, states, 3));
+        fsm.process("SYMBOLS Z");
+    }
+
+    @State(Scope.Thread)
+    public static class VictimState {
+        @Setup(Level.Invocation)
+        public void add(DeleteBenchmark b) {
+            b.fsm.process("STATES VICTIM");
+            for (int i = 0; i < FAN_IN; i++) {
+                b.fsm.process("TRANSITION S" + (i * (b.states / FAN_IN)) + " Z VICTIM");
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class VictimStates {
+        @Setup(Level.Invocation)
+        public void add(DeleteBenchmark b) {
+            for (int v = 0; v < FAN_IN; v++) {
+                b.fsm.process("STATES VICTIM" + v);
+                for (int i = 0; i < FAN_IN; i++) {
+                    b.fsm.process("TRANSITION S" + (i * (b.states / FAN_IN) + v) + " Z VICTIM" + v);
+                }
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class VictimSymbol {
+        @Setup(Level.Invocation)
+        public void add(DeleteBenchmark b) {
+            b.fsm.process("SYMBOLS Y");
+            for (int i = 0; i < FAN_IN; i++) {
+                b.fsm.process("TRANSITION S" + (i * (b.states / FAN_IN)) + " Y S0");
+            }
+        }
+    }
+
+    @Benchmark
+    public void deleteState(VictimState victim) {
+        fsm.process("DELETE STATE VICTIM");
+    }
+
+    @Benchmark
+    public void deleteStates(VictimStates victims) {
+        fsm.process("DELETE STATES VICTIM0 VICTIM1 VICTIM2 VICTIM3 VICTIM4 VICTIM5 VICTIM6 VICTIM7"
+                + " VICTIM8 VICTIM9 VICTIM10 VICTIM11 VICTIM12 VICTIM13 VICTIM14 VICTIM15");
+    }
+
+    @Benchmark
+    public void deleteSymbol(VictimSymbol victim) {
+        fsm.process("DELETE SYMBOL Y");
+    }
+}
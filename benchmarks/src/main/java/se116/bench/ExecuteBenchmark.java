@@ -0,0 +1,51 @@
+package se116.bench;
+
+import org.openjdk.jmh.annotations.*;
+import se116.fsm.CompiledFSM;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ EXECUTE across machine shapes, machine sizes and input lengths.
+ executeCommand is the full REPL path (parse, validate, run, print the path),
+ accepts is the library API's allocation-free accept check alone.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExecuteBenchmark {
+    @Param({"RANDOM", "CHAIN", "DENSE"})
+    public Machines.Shape shape;
+
+    @Param({"16", "1024", "65536"})
+    public int states;
+
+    @Param({"16", "1024", "65536"})
+    public int length;
+
+    private Fsm fsm;
+    private CompiledFSM snapshot;
+    private String input;
+    private String command;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fsm = new Fsm();
+        fsm.processAll(Machines.define(shape, states, 42));
+        input = Machines.input(shape, length, 7);
+        command = "EXECUTE " + input;
+        snapshot = fsm.snapshot();
+    }
+
+    @Benchmark
+    public void executeCommand() {
+        fsm.process(command);
+    }
+
+    @Benchmark
+    public boolean accepts() {
+        return snapshot.accepts(input);
+    }
+}
@@ -0,0 +1,71 @@
+package se116.bench;
+
+import se116.fsm.CompiledFSM;
+
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/*
+ Access to the designer's REPL classes. They are package-private, so the
+ handles are looked up once by name and called through static finals, which
+ the JIT inlines like a direct call. Snapshots are the public CompiledFSM.*/
+final class Fsm {
+    private static final MethodHandle NEW;      // (OutputSink) -> CommandProcessor
+    private static final MethodHandle SINK;     // (OutputStream) -> OutputSink
+    private static final MethodHandle PROCESS;  // (CommandProcessor, String) -> void
+    private static final MethodHandle SNAPSHOT; // (CommandProcessor) -> CompiledFSM
+
+    static {
+        try {
+            Class<?> processor = Class.forName("se116.fsm.CommandProcessor");
+            Class<?> sink = Class.forName("se116.fsm.OutputSink");
+            MethodHandles.Lookup p = MethodHandles.privateLookupIn(processor, MethodHandles.lookup());
+            NEW = p.findConstructor(processor, MethodType.methodType(void.class, sink))
+                    .asType(MethodType.methodType(Object.class, Object.class));
+            SINK = MethodHandles.privateLookupIn(sink, MethodHandles.lookup())
+                    .findConstructor(sink, MethodType.methodType(void.class, OutputStream.class))
+                    .asType(MethodType.methodType(Object.class, OutputStream.class));
+            PROCESS = p.findVirtual(processor, "process", MethodType.methodType(void.class, String.class))
+                    .asType(MethodType.methodType(void.class, Object.class, String.class));
+            SNAPSHOT = p.findVirtual(processor, "snapshot", MethodType.methodType(CompiledFSM.class))
+                    .asType(MethodType.methodType(CompiledFSM.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Object processor;
+
+    Fsm() {
+        try {
+            // Every command prints; output is encoded into a discarding sink so that
+            // only the cost of building it is measured
+            Object sink = (Object) SINK.invokeExact(OutputStream.nullOutputStream());
+            processor = (Object) NEW.invokeExact(sink);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    void process(String command) {
+        try {
+            PROCESS.invokeExact(processor, command);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    void processAll(Iterable<String> commands) {
+        for (String command : commands) process(command);
+    }
+
+    CompiledFSM snapshot() {
+        try {
+            return (CompiledFSM) SNAPSHOT.invokeExact(processor);
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+}
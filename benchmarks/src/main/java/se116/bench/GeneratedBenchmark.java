@@ -0,0 +1,54 @@
+package se116.bench;
+
+import org.openjdk.jmh.annotations.*;
+import se116.fsm.CompiledFSM;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ The same machine executed from the table and from the code GENERATE built.
+ Both snapshots come from identical definitions; the second is the one
+ GENERATE FORCE published, which runs the generated code even where GENERATE
+ alone would keep the table. Scores are per input.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratedBenchmark {
+    @Param({"RANDOM", "CHAIN"})
+    public Machines.Shape shape;
+
+    @Param({"8", "48"})
+    public int states;
+
+    @Param({"65536"})
+    public int length;
+
+    private CompiledFSM table;
+    private CompiledFSM generated;
+    private String input;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Fsm a = new Fsm();
+        a.processAll(Machines.define(shape, states, 42));
+        table = a.snapshot();
+        Fsm b = new Fsm();
+        b.processAll(Machines.define(shape, states, 42));
+        b.process("GENERATE FORCE");
+        generated = b.snapshot();
+        input = Machines.input(shape, length, 7);
+    }
+
+    @Benchmark
+    public int table() {
+        return table.run(input);
+    }
+
+    @Benchmark
+    public int generated() {
+        return generated.run(input);
+    }
+}
@@ -0,0 +1,83 @@
+package se116.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/*
+ Generates FSM definitions as the commands a user would type*/
+public final class Machines {
+    public enum Shape {
+        RANDOM("ABCD"),                                 // every state has a random target per symbol
+        CHAIN("AB"),                                    // A moves one state ahead, B goes back to the start
+        DENSE("0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ");  // full alphabet, random targets
+
+        final String alphabet;
+
+        Shape(String alphabet) {
+            this.alphabet = alphabet;
+        }
+    }
+
+    private static final int ENTRIES_PER_COMMAND = 10_000;
+
+    private Machines() {
+    }
+
+    static List<String> define(Shape shape, int states, long seed) {
+        Random random = new Random(seed);
+        List<String> commands = new ArrayList<>();
+
+        StringBuilder sb = new StringBuilder("SYMBOLS");
+        for (char c : shape.alphabet.toCharArray()) sb.append(' ').append(c);
+        commands.add(sb.toString());
+
+        sb = new StringBuilder("STATES");
+        for (int i = 0; i < states; i++) sb.append(" S").append(i);
+        commands.add(sb.toString());
+
+        sb = new StringBuilder("FINAL-STATES");
+        if (shape == Shape.CHAIN) {
+            sb.append(" S").append(states - 1);
+        } else {
+            for (int i = 0; i < states; i += 4) sb.append(" S").append(i);
+        }
+        commands.add(sb.toString());
+
+        sb = new StringBuilder("TRANSITIONS");
+        int entries = 0;
+        for (int i = 0; i < states; i++) {
+            for (char c : shape.alphabet.toCharArray()) {
+                int to;
+                if (shape == Shape.CHAIN) {
+                    to = c == 'A' ? (i + 1) % states : 0;
+                } else {
+                    to = random.nextInt(states);
+                }
+                sb.append(entries == 0 ? " " : ", ").append(c).append(" S").append(i).append(" S").append(to);
+                if (++entries == ENTRIES_PER_COMMAND) {
+                    commands.add(sb.toString());
+                    sb = new StringBuilder("TRANSITIONS");
+                    entries = 0;
+                }
+            }
+        }
+        if (entries > 0) commands.add(sb.toString());
+        return commands;
+    }
+
+    /*
+     Random input over the shape's alphabet; CHAIN inputs are mostly A so runs go deep*/
+    static String input(Shape shape, int length, long seed) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            if (shape == Shape.CHAIN) {
+                sb.append(random.nextInt(64) == 0 ? 'B' : 'A');
+            } else {
+                sb.append(shape.alphabet.charAt(random.nextInt(shape.alphabet.length())));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package se116.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+ EXECUTE-PARALLEL on one 256 MB input, sequentially (threads=1) against all
+ cores. RANDOM machines converge after a few symbols, so chunks speculate
+ cheaply; CHAIN runs are mostly A, which keeps many paths apart for long and
+ exercises the fallback.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ParallelBenchmark {
+    private static final int LENGTH = 256 << 20;
+    private static final int BLOCK = 1 << 20; // generated once and repeated
+
+    @Param({"RANDOM", "CHAIN"})
+    public Machines.Shape shape;
+
+    @Param({"16", "4096"})
+    public int states;
+
+    @Param({"1", "0"}) // 0: all cores
+    public int threads;
+
+    private Fsm fsm;
+    private Path file;
+    private String command;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fsm = new Fsm();
+        fsm.processAll(Machines.define(shape, states, 42));
+        file = Files.createTempFile("fsm-bench", ".txt");
+        byte[] block = Machines.input(shape, BLOCK, 7).getBytes(StandardCharsets.US_ASCII);
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < LENGTH / BLOCK; i++) out.write(block);
+        }
+        int t = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        command = "EXECUTE-PARALLEL " + file + " " + t;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void executeParallel() {
+        fsm.process(command);
+    }
+}
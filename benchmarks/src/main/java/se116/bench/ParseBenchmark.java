@@ -0,0 +1,52 @@
+package se116.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ Cost of CommandProcessor.process for commands that are mostly parsing:
+ splitting, upper-casing, validating and dispatching*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+    private Fsm fsm;
+    private String transitions;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fsm = new Fsm();
+        fsm.processAll(Machines.define(Machines.Shape.RANDOM, 64, 1));
+
+        // A 64 entry block that rewrites existing transitions
+        StringBuilder sb = new StringBuilder("TRANSITIONS");
+        for (int i = 0; i < 64; i++) {
+            sb.append(i == 0 ? " " : ", ").append("ABCD".charAt(i % 4)).append(" S").append(i).append(" S").append(63 - i);
+        }
+        transitions = sb.toString();
+    }
+
+    @Benchmark
+    public void transition() {
+        fsm.process("TRANSITION s1 a s2");
+    }
+
+    @Benchmark
+    public void transitionsBlock() {
+        fsm.process(transitions);
+    }
+
+    @Benchmark
+    public void finalStates() {
+        fsm.process("FINAL-STATES S1 S2 S3 S4");
+    }
+
+    @Benchmark
+    public void unknownCommand() {
+        fsm.process("FROBNICATE S1 S2");
+    }
+}
@@ -0,0 +1,57 @@
+package se116.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+ COMPILE and LOAD of random machines through a temporary file*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceBenchmark {
+    @Param({"1024", "65536"})
+    public int states;
+
+    private Fsm fsm;
+    private Path file;
+    private String compile;
+    private String load;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fsm = new Fsm();
+        fsm.processAll(Machines.define(Machines.Shape.RANDOM, states, 5));
+        file = Files.createTempFile("fsm-bench", ".fsm");
+        compile = "COMPILE " + file;
+        load = "LOAD " + file;
+        fsm.process(compile);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void compile() {
+        fsm.process(compile);
+    }
+
+    @Benchmark
+    public void load() {
+        fsm.process(load);
+    }
+
+    @Benchmark
+    public void roundTrip() {
+        fsm.process(compile);
+        fsm.process(load);
+    }
+}
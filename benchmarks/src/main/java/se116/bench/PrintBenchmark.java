@@ -0,0 +1,37 @@
+package se116.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ PRINT of a whole random machine and of one page of it, encoded into a
+ discarding sink.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrintBenchmark {
+    @Param({"1024", "262144"})
+    public int states;
+
+    private Fsm fsm;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fsm = new Fsm();
+        fsm.processAll(Machines.define(Machines.Shape.RANDOM, states, 11));
+    }
+
+    @Benchmark
+    public void printAll() {
+        fsm.process("PRINT");
+    }
+
+    @Benchmark
+    public void printPage() {
+        fsm.process("PRINT LIMIT 100 PAGE 3");
+    }
+}
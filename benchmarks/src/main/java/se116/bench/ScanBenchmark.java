@@ -0,0 +1,70 @@
+package se116.bench;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+ SCAN over a 256 MB file, sequentially (threads=1) against all cores. CHAIN
+ machines match after states-1 A's in a row. "words" puts a space after every
+ 16 symbols, like words in a log, so nothing matches and regions start right
+ after a space; "none" leaves the spaces out, which makes every region
+ continue from the one before it and lets 64 states match at about a third of
+ the bytes, so writing the results is measured too.*/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class ScanBenchmark {
+    private static final int LENGTH = 256 << 20;
+    private static final int BLOCK = 1 << 20; // generated once and repeated
+
+    @Param({"64", "4096"})
+    public int states;
+
+    @Param({"words", "none"})
+    public String spaces;
+
+    @Param({"1", "0"}) // 0: all cores
+    public int threads;
+
+    private Fsm fsm;
+    private Path file;
+    private Path matches;
+    private String command;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        fsm = new Fsm();
+        fsm.processAll(Machines.define(Machines.Shape.CHAIN, states, 42));
+        file = Files.createTempFile("fsm-bench", ".txt");
+        matches = Files.createTempFile("fsm-bench", ".out");
+        byte[] block = Machines.input(Machines.Shape.CHAIN, BLOCK, 7).getBytes(StandardCharsets.US_ASCII);
+        if (spaces.equals("words")) {
+            for (int i = 16; i < BLOCK; i += 17) block[i] = ' ';
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            for (int i = 0; i < LENGTH / BLOCK; i++) out.write(block);
+        }
+        int t = threads == 0 ? Runtime.getRuntime().availableProcessors() : threads;
+        command = "SCAN " + file + " " + matches + " " + t;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(matches);
+    }
+
+    @Benchmark
+    public void scan() {
+        fsm.process(command);
+    }
+}
@@ -0,0 +1,98 @@
+package se116.bench;
+
+import org.openjdk.jmh.annotations.*;
+import se116.fsm.CompiledFSM;
+import se116.fsm.FSMBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/*
+ Token stream execution against character execution on the same machine.
+ The machine has the 36 single-character symbols plus `symbols` event names;
+ every state has a transition on each character and on 16 of the names.
+ chars and charTokens run the same path, as a string and as a token stream;
+ eventTokens runs a stream of event names. Scores are per input of 1024 symbols.*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenBenchmark {
+    private static final String CHARS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    private static final int LENGTH = 1024;
+    private static final int EVENTS_PER_STATE = 16;
+
+    @Param({"100", "5000"})
+    public int symbols;
+
+    @Param({"64", "1024"})
+    public int states;
+
+    private CompiledFSM fsm;
+    private String chars;
+    private String charTokens;
+    private String eventTokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        FSMBuilder b = CompiledFSM.builder();
+        String[] names = new String[states];
+        for (int i = 0; i < states; i++) names[i] = "S" + i;
+        b.states(names).finals(names[0]);
+        String[] events = new String[symbols];
+        for (int i = 0; i < symbols; i++) events[i] = "EVENT" + Integer.toString(i, 36);
+        for (char c : CHARS.toCharArray()) b.symbols(String.valueOf(c));
+        b.symbols(events);
+        for (int s = 0; s < states; s++) {
+            for (char c : CHARS.toCharArray()) b.transition(names[s], String.valueOf(c), names[random.nextInt(states)]);
+            int first = random.nextInt(symbols);
+            for (int k = 0; k < EVENTS_PER_STATE; k++) {
+                b.transition(names[s], events[(first + k) % symbols], names[random.nextInt(states)]);
+            }
+        }
+        fsm = b.build();
+
+        StringBuilder c = new StringBuilder();
+        StringBuilder t = new StringBuilder();
+        for (int i = 0; i < LENGTH; i++) {
+            char ch = CHARS.charAt(random.nextInt(CHARS.length()));
+            c.append(ch);
+            t.append(i == 0 ? "" : ",").append(ch);
+        }
+        chars = c.toString();
+        charTokens = t.toString();
+
+        // A path of defined event transitions
+        StringBuilder e = new StringBuilder();
+        int state = fsm.initialState();
+        for (int i = 0; i < LENGTH; i++) {
+            String event;
+            int next;
+            do {
+                event = events[random.nextInt(symbols)];
+                next = fsm.nextToken(state, fsm.symbolId(event));
+            } while (next == CompiledFSM.NONE);
+            e.append(i == 0 ? "" : ",").append(event);
+            state = next;
+        }
+        eventTokens = e.toString();
+    }
+
+    @Benchmark
+    public int chars() {
+        return fsm.run(chars);
+    }
+
+    @Benchmark
+    public int charTokens() {
+        return fsm.runTokens(charTokens);
+    }
+
+    @Benchmark
+    public int eventTokens() {
+        return fsm.runTokens(eventTokens);
+    }
+}
@@ -0,0 +1,298 @@
+package se116.fsm;
+
+import java.util.Arrays;
+
+/*
+ Structure of a machine for the ANALYZE command: states reachable from the
+ initial state, states that can reach a final state (co-reachable), strongly
+ connected components, missing (state, symbol) pairs and sink states.
+ The graph is put into CSR int arrays once (table entries of the declared
+ symbols, multi-character symbol transitions and NFA moves), then every part
+ is one linear pass: BFS forwards, BFS over the reversed arrays, and Tarjan's
+ algorithm with an explicit stack so that long chains of states can not
+ overflow the thread stack. Missing pairs count every declared symbol, the
+ multi-character ones included.*/
+final class Analysis {
+    private static final int TOP = 10; // names listed per category, like the STATS lists
+
+    private final CompiledFSM fsm;
+    private final int n;
+    private final int[] cols;        // declared symbol indexes
+    private final int[] tokens;      // positions of the multi-character symbols in symbolNames
+    private final long[] tokenPairs; // sorted state * symbolNames.length + position of their transitions
+    private final int[] start;       // CSR: successors of s are succ[start[s] .. start[s + 1])
+    private final int[] succ;
+
+    final boolean[] reachable;
+    final boolean[] coReachable;
+    int reachableCount;
+    int coReachableCount;
+    int components;
+    int largestComponent;
+    int cyclicComponents;            // more than one state, or one state with a loop
+    long missing;                    // (state, symbol) pairs without a transition
+    int sinks;                       // states no transition leaves
+
+    Analysis(CompiledFSM fsm) {
+        this.fsm = fsm;
+        this.n = fsm.stateCount();
+        int k = 0;
+        int[] c = new int[CompiledFSM.ALPHABET];
+        for (int i = 0; i < CompiledFSM.ALPHABET; i++) {
+            if (fsm.declared[i]) c[k++] = i;
+        }
+        cols = Arrays.copyOf(c, k);
+        int width = fsm.symbolNames.length;
+        tokens = new int[width - k];
+        for (int p = 0, t = 0; p < width; p++) {
+            if (fsm.symbolNames[p].length() > 1) tokens[t++] = p;
+        }
+        tokenPairs = new long[fsm.extra.length / 3];
+        for (int i = 0; i < fsm.extra.length; i += 3) tokenPairs[i / 3] = (long) fsm.extra[i] * width + fsm.extra[i + 1];
+        Arrays.sort(tokenPairs);
+
+        // Successor lists: table entries of the declared symbols, multi-character symbols, then NFA moves
+        start = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            for (int col : cols) {
+                if (fsm.step(s, col) != CompiledFSM.NONE) start[s + 1]++;
+            }
+        }
+        for (int i = 0; i < fsm.extra.length; i += 3) start[fsm.extra[i] + 1]++;
+        for (int i = 0; i < fsm.nfa.length; i += 3) start[fsm.nfa[i] + 1]++;
+        for (int s = 0; s < n; s++) start[s + 1] += start[s];
+        succ = new int[start[n]];
+        int[] fill = Arrays.copyOf(start, n);
+        for (int s = 0; s < n; s++) {
+            for (int col : cols) {
+                int t = fsm.step(s, col);
+                if (t != CompiledFSM.NONE) succ[fill[s]++] = t;
+            }
+        }
+        for (int i = 0; i < fsm.extra.length; i += 3) succ[fill[fsm.extra[i]]++] = fsm.extra[i + 2];
+        for (int i = 0; i < fsm.nfa.length; i += 3) succ[fill[fsm.nfa[i]]++] = fsm.nfa[i + 2];
+
+        reachable = new boolean[n];
+        coReachable = new boolean[n];
+        reachability();
+        coReachability();
+        components();
+        missingAndSinks();
+    }
+
+    private void reachability() {
+        if (fsm.initial == CompiledFSM.NONE) return;
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        reachable[fsm.initial] = true;
+        queue[tail++] = fsm.initial;
+        while (head < tail) {
+            int s = queue[head++];
+            for (int e = start[s]; e < start[s + 1]; e++) {
+                int t = succ[e];
+                if (!reachable[t]) {
+                    reachable[t] = true;
+                    queue[tail++] = t;
+                }
+            }
+        }
+        reachableCount = tail;
+    }
+
+    // BFS from the final states over the reversed edges
+    private void coReachability() {
+        int[] predStart = new int[n + 1];
+        for (int t : succ) predStart[t + 1]++;
+        for (int s = 0; s < n; s++) predStart[s + 1] += predStart[s];
+        int[] pred = new int[succ.length];
+        int[] fill = Arrays.copyOf(predStart, n);
+        for (int s = 0; s < n; s++) {
+            for (int e = start[s]; e < start[s + 1]; e++) pred[fill[succ[e]]++] = s;
+        }
+
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        for (int s = 0; s < n; s++) {
+            if (fsm.finals[s]) {
+                coReachable[s] = true;
+                queue[tail++] = s;
+            }
+        }
+        while (head < tail) {
+            int t = queue[head++];
+            for (int e = predStart[t]; e < predStart[t + 1]; e++) {
+                int s = pred[e];
+                if (!coReachable[s]) {
+                    coReachable[s] = true;
+                    queue[tail++] = s;
+                }
+            }
+        }
+        coReachableCount = tail;
+    }
+
+    /*
+     Tarjan's algorithm. The recursion is replaced by a frame stack holding the
+     state and the position in its successor list.*/
+    private void components() {
+        int[] index = new int[n];
+        Arrays.fill(index, -1);
+        int[] low = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int sp = 0;
+        int[] frameState = new int[n];
+        int[] frameEdge = new int[n];
+        int next = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] != -1) continue;
+            int fp = 0;
+            frameState[fp] = root;
+            frameEdge[fp++] = start[root];
+            index[root] = low[root] = next++;
+            stack[sp++] = root;
+            onStack[root] = true;
+
+            while (fp > 0) {
+                int v = frameState[fp - 1];
+                int e = frameEdge[fp - 1];
+                if (e < start[v + 1]) {
+                    frameEdge[fp - 1] = e + 1;
+                    int w = succ[e];
+                    if (index[w] == -1) {
+                        index[w] = low[w] = next++;
+                        stack[sp++] = w;
+                        onStack[w] = true;
+                        frameState[fp] = w;
+                        frameEdge[fp++] = start[w];
+                    } else if (onStack[w] && index[w] < low[v]) {
+                        low[v] = index[w];
+                    }
+                    continue;
+                }
+
+                // All successors done: v is the root of a component or reports its low link up
+                fp--;
+                if (low[v] == index[v]) {
+                    int size = 0;
+                    int w;
+                    do {
+                        w = stack[--sp];
+                        onStack[w] = false;
+                        size++;
+                    } while (w != v);
+                    components++;
+                    largestComponent = Math.max(largestComponent, size);
+                    if (size > 1 || hasLoop(v)) cyclicComponents++;
+                }
+                if (fp > 0) {
+                    int u = frameState[fp - 1];
+                    if (low[v] < low[u]) low[u] = low[v];
+                }
+            }
+        }
+    }
+
+    private boolean hasLoop(int s) {
+        for (int e = start[s]; e < start[s + 1]; e++) {
+            if (succ[e] == s) return true;
+        }
+        return false;
+    }
+
+    private void missingAndSinks() {
+        boolean[] nfaMove = nfaMoves();
+        for (int s = 0; s < n; s++) {
+            if (start[s] == start[s + 1]) sinks++;
+            for (int col : cols) {
+                if (isMissing(s, col, nfaMove)) missing++;
+            }
+            for (int p : tokens) {
+                if (isMissingToken(s, p)) missing++;
+            }
+        }
+    }
+
+    // (state, symbol) pairs covered by an NFA move, so that they do not count as missing
+    private boolean[] nfaMoves() {
+        if (fsm.nfa.length == 0) return null;
+        boolean[] moves = new boolean[n * CompiledFSM.ALPHABET];
+        for (int i = 0; i < fsm.nfa.length; i += 3) {
+            if (fsm.nfa[i + 1] != CompiledFSM.EPSILON) moves[fsm.nfa[i] * CompiledFSM.ALPHABET + fsm.nfa[i + 1]] = true;
+        }
+        return moves;
+    }
+
+    private boolean isMissing(int s, int col, boolean[] nfaMove) {
+        return fsm.step(s, col) == CompiledFSM.NONE && (nfaMove == null || !nfaMove[s * CompiledFSM.ALPHABET + col]);
+    }
+
+    // Multi-character symbols are deterministic, so a pair is covered by at most one extra transition
+    private boolean isMissingToken(int s, int position) {
+        return Arrays.binarySearch(tokenPairs, (long) s * fsm.symbolNames.length + position) < 0;
+    }
+
+    void report(OutputSink o) {
+        o.append("States: ").append(n).append(", transitions: ").append(succ.length)
+                .append(", symbols: ").append(cols.length + tokens.length).line();
+
+        if (fsm.initial == CompiledFSM.NONE) {
+            o.line("Reachable: no initial state defined");
+        } else {
+            o.append("Reachable from ").append(fsm.stateName(fsm.initial)).append(": ")
+                    .append(reachableCount).append(" of ").append(n).append(" states").line();
+        }
+        list(o, "Unreachable", reachable, n - reachableCount);
+        o.append("Co-reachable (can reach a final state): ").append(coReachableCount)
+                .append(" of ").append(n).append(" states").line();
+        list(o, "Dead", coReachable, n - coReachableCount);
+
+        o.append("Strongly connected components: ").append(components).append(", largest ")
+                .append(largestComponent).append(" states, ").append(cyclicComponents).append(" with cycles").line();
+
+        o.append("Missing transitions: ").append(missing).append(" (state, symbol) pairs").line();
+        boolean[] nfaMove = nfaMoves();
+        long shown = 0;
+        for (int s = 0; s < n && shown < TOP; s++) {
+            for (int col : cols) {
+                if (shown == TOP || !isMissing(s, col, nfaMove)) continue;
+                o.append(" - ").append(fsm.stateName(s)).append(' ').append(symbol(col)).line();
+                shown++;
+            }
+            for (int p : tokens) {
+                if (shown == TOP || !isMissingToken(s, p)) continue;
+                o.append(" - ").append(fsm.stateName(s)).append(' ').append(fsm.symbolNames[p]).line();
+                shown++;
+            }
+        }
+        if (missing > shown) o.append(" ... ").append(missing - shown).append(" more").line();
+
+        o.append("Sink states (no transitions out): ").append(sinks).line();
+        shown = 0;
+        for (int s = 0; s < n && shown < TOP; s++) {
+            if (start[s] != start[s + 1]) continue;
+            o.append(" - ").append(fsm.stateName(s)).append(fsm.finals[s] ? " (final)" : "").line();
+            shown++;
+        }
+        if (sinks > shown) o.append(" ... ").append(sinks - shown).append(" more").line();
+    }
+
+    // Names of the states that are not marked, cut to the first TOP
+    private void list(OutputSink o, String label, boolean[] marked, int count) {
+        if (count == 0) return;
+        o.append(' ').append(label).append(": ");
+        int shown = 0;
+        for (int s = 0; s < n && shown < TOP; s++) {
+            if (marked[s]) continue;
+            if (shown++ > 0) o.append(", ");
+            o.append(fsm.stateName(s));
+        }
+        if (count > shown) o.append(" ... ").append(count - shown).append(" more");
+        o.line();
+    }
+
+    private static char symbol(int index) {
+        return (char) (index < 10 ? '0' + index : 'A' + index - 10);
+    }
+}
@@ -0,0 +1,206 @@
+package se116.fsm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ Log file writer behind the LOG command.
+ Producers put records into a bounded lock-free ring buffer (one CAS per
+ record, no I/O); a background thread drains it and writes batches of
+ formatted lines to a FileChannel. Timestamps are taken as longs and only
+ formatted on the writer thread.*/
+final class AsyncLogger {
+    // What happens to a record when the ring buffer is full
+    enum FullPolicy {
+        BLOCK, // wait for the writer to make room, nothing is lost unless the writer has stopped
+        DROP   // discard the record and count it
+    }
+
+    static final byte COMMAND = 0;
+    static final byte OUTPUT = 1;
+
+    private static final int CAPACITY = 1 << 16;  // records, power of two
+    private static final long IDLE_PARK_NANOS = 5_000_000L;
+
+    private final FileChannel channel;
+    private final FullPolicy policy;
+    private final Thread writer;
+
+    // Ring buffer: a slot is free for position p when its sequence is p,
+    // and holds the record of position p when its sequence is p + 1
+    private final AtomicLongArray sequence = new AtomicLongArray(CAPACITY);
+    private final String[] texts = new String[CAPACITY];
+    private final long[] times = new long[CAPACITY];
+    private final byte[] kinds = new byte[CAPACITY];
+    private final AtomicLong tail = new AtomicLong();  // next position to claim
+    private volatile long forced;                      // positions below this are on disk
+    private final AtomicLong flushRequested = new AtomicLong(); // highest tail position a flush() waits for
+    private volatile boolean closing;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicReference<IOException> failure = new AtomicReference<>(); // why the writer stopped
+
+    // Writer thread only: last formatted timestamp, consecutive records mostly share it
+    private long stampTime = -1;
+    private byte[] stamp;
+
+    AsyncLogger(Path path, FullPolicy policy) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.policy = policy;
+        for (int i = 0; i < CAPACITY; i++) sequence.set(i, i);
+        this.writer = new Thread(this::drain, "fsm-log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    long dropped() {
+        return dropped.get();
+    }
+
+    /*
+     The error that stopped the writer thread, returned once; null if it runs
+     or was already reported. Records logged after it are dropped.*/
+    IOException takeFailure() {
+        return failure.getAndSet(null);
+    }
+
+    /*
+     Queues a record; never does I/O on the calling thread*/
+    void log(byte kind, String text) {
+        long time = System.currentTimeMillis();
+        long pos;
+        while (true) {
+            pos = tail.get();
+            int slot = (int) (pos & (CAPACITY - 1));
+            long seq = sequence.get(slot);
+            if (seq == pos) {
+                if (tail.compareAndSet(pos, pos + 1)) break;
+            } else if (seq < pos) {
+                // Full: the writer has not consumed the record CAPACITY positions back,
+                // and never will once it has stopped
+                if (policy == FullPolicy.DROP || !writer.isAlive()) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                LockSupport.unpark(writer);
+                Thread.onSpinWait();
+            }
+        }
+        int slot = (int) (pos & (CAPACITY - 1));
+        texts[slot] = text;
+        times[slot] = time;
+        kinds[slot] = kind;
+        sequence.set(slot, pos + 1); // publishes the record to the writer
+    }
+
+    /*
+     Waits until every record logged so far is written and forced to disk*/
+    void flush() {
+        long target = tail.get();
+        flushRequested.accumulateAndGet(target, Math::max);
+        LockSupport.unpark(writer);
+        while (forced < target && writer.isAlive()) {
+            LockSupport.parkNanos(100_000L);
+        }
+    }
+
+    /*
+     Flushes, stops the writer thread and closes the file*/
+    void close() {
+        flush();
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writer thread: drains the ring in batches through one direct buffer
+    private void drain() {
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+        long head = 0;
+        long reportedDrops = 0;
+        try {
+            while (true) {
+                boolean any = false;
+                while (true) {
+                    int slot = (int) (head & (CAPACITY - 1));
+                    if (sequence.get(slot) != head + 1) break;
+                    String text = texts[slot];
+                    line(buf, times[slot], kinds[slot], text);
+                    texts[slot] = null;
+                    sequence.set(slot, head + CAPACITY); // slot free for the next lap
+                    head++;
+                    any = true;
+                    if (buf.remaining() < 1024) write(buf);
+                }
+                long drops = dropped.get();
+                if (drops != reportedDrops) {
+                    line(buf, System.currentTimeMillis(), OUTPUT,
+                            "Warning: " + (drops - reportedDrops) + " log records dropped, buffer full");
+                    reportedDrops = drops;
+                }
+                write(buf);
+                long requested = flushRequested.get();
+                if (requested > forced && head >= requested) {
+                    channel.force(false);
+                    forced = head;
+                }
+                if (closing && head == tail.get()) break;
+                if (!any) LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        } catch (IOException e) {
+            failure.set(e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // nothing left to do with a broken log file
+            }
+        }
+    }
+
+    // One line: timestamp, record label, text
+    private void line(ByteBuffer buf, long time, byte kind, String text) throws IOException {
+        String label = kind == COMMAND ? "CMD "
+                : text.startsWith("Warning") ? "WARN"
+                : text.startsWith("Error") ? "ERR "
+                : "OUT ";
+        if (time != stampTime) {
+            stampTime = time;
+            stamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(time), ZoneId.systemDefault())
+                    .toString().getBytes(StandardCharsets.UTF_8);
+        }
+        put(buf, stamp);
+        put(buf, (" " + label + " " + text + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void put(ByteBuffer buf, byte[] bytes) throws IOException {
+        int i = 0;
+        while (i < bytes.length) {
+            if (!buf.hasRemaining()) write(buf);
+            int n = Math.min(bytes.length - i, buf.remaining());
+            buf.put(bytes, i, n);
+            i += n;
+        }
+    }
+
+    private void write(ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+}
@@ -0,0 +1,162 @@
+package se116.fsm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ Runs the FSM over a file with one input per line (EXECUTE-FILE).
+ The input is memory-mapped one window at a time, every window is cut into
+ chunks at line boundaries and the chunks are executed on a fork-join pool.
+ Results are written as YES/NO lines in input order.*/
+final class BatchExecutor {
+    private static final long WINDOW = 64L << 20; // bytes mapped at once
+    private static final int CHUNK = 1 << 20;     // bytes of input per task
+
+    private static final byte[] YES = {'Y', 'E', 'S', '\n'};
+    private static final byte[] NO = {'N', 'O', '\n'};
+
+    // Totals of one batch run
+    static final class Summary {
+        long inputs;
+        long accepted;
+
+        long rejected() {
+            return inputs - accepted;
+        }
+    }
+
+    private BatchExecutor() {
+    }
+
+    /*
+     dfaCacheStates bounds the lazy DFA each worker thread builds when the FSM is an NFA*/
+    static Summary run(CompiledFSM fsm, int dfaCacheStates, Path input, Path output) throws IOException {
+        Summary summary = new Summary();
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        ThreadLocal<LazyDFA> dfas = fsm.isDeterministic() ? null
+                : ThreadLocal.withInitial(() -> new LazyDFA(fsm, dfaCacheStates));
+
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long pos = 0;
+            while (pos < size) {
+                int length = (int) Math.min(WINDOW, size - pos);
+                MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, pos, length);
+
+                // Stop the window after its last complete line unless this is the end of the file
+                int end = length;
+                if (pos + length < size) {
+                    end = lastNewline(window, length) + 1;
+                    if (end == 0) {
+                        throw new IOException("line at offset " + pos + " is longer than " + WINDOW + " bytes");
+                    }
+                }
+
+                // Execute the chunks in parallel and write their results in order
+                ChunkTask[] tasks = split(fsm, dfas, window, end);
+                for (ChunkTask task : tasks) pool.execute(task);
+                for (ChunkTask task : tasks) {
+                    ChunkResult r = task.join();
+                    summary.inputs += r.inputs;
+                    summary.accepted += r.accepted;
+                    ByteBuffer bytes = ByteBuffer.wrap(r.out, 0, r.length);
+                    while (bytes.hasRemaining()) out.write(bytes);
+                }
+                pos += end;
+            }
+        }
+        return summary;
+    }
+
+    /*
+     Cuts [0, end) into tasks of about CHUNK bytes, each ending right after a newline*/
+    private static ChunkTask[] split(CompiledFSM fsm, ThreadLocal<LazyDFA> dfas, ByteBuffer window, int end) {
+        ChunkTask[] tasks = new ChunkTask[end / CHUNK + 1];
+        int count = 0;
+        int start = 0;
+        while (start < end) {
+            int cut = (int) Math.min((long) start + CHUNK, end);
+            while (cut < end && window.get(cut - 1) != '\n') cut++;
+            if (count == tasks.length) tasks = Arrays.copyOf(tasks, count * 2);
+            tasks[count++] = new ChunkTask(fsm, dfas, window, start, cut);
+            start = cut;
+        }
+        return Arrays.copyOf(tasks, count);
+    }
+
+    private static int lastNewline(ByteBuffer buf, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (buf.get(i) == '\n') return i;
+        }
+        return -1;
+    }
+
+    private static final class ChunkResult {
+        byte[] out;
+        int length;
+        long inputs;
+        long accepted;
+    }
+
+    /*
+     Executes every line of [from, to); a trailing '\r' is ignored*/
+    private static final class ChunkTask extends RecursiveTask<ChunkResult> {
+        private final CompiledFSM fsm;
+        private final ThreadLocal<LazyDFA> dfas; // null for a DFA
+        private final ByteBuffer buf;
+        private final int from;
+        private final int to;
+
+        ChunkTask(CompiledFSM fsm, ThreadLocal<LazyDFA> dfas, ByteBuffer buf, int from, int to) {
+            this.fsm = fsm;
+            this.dfas = dfas;
+            this.buf = buf;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected ChunkResult compute() {
+            ChunkResult r = new ChunkResult();
+            r.out = new byte[(to - from) / 2 + 16];
+            LazyDFA dfa = dfas == null ? null : dfas.get();
+            int lineStart = from;
+            while (lineStart < to) {
+                int lineEnd = lineStart;
+                while (lineEnd < to && buf.get(lineEnd) != '\n') lineEnd++;
+                int next = lineEnd + 1;
+                if (lineEnd > lineStart && buf.get(lineEnd - 1) == '\r') lineEnd--;
+
+                boolean yes;
+                if (dfa != null) {
+                    yes = dfa.accepts(buf, lineStart, lineEnd);
+                } else {
+                    int state = fsm.run(buf, lineStart, lineEnd);
+                    yes = state != CompiledFSM.NONE && fsm.finals[state];
+                }
+                append(r, yes ? YES : NO);
+                r.inputs++;
+                if (yes) r.accepted++;
+                lineStart = next;
+            }
+            return r;
+        }
+
+        private static void append(ChunkResult r, byte[] bytes) {
+            if (r.length + bytes.length > r.out.length) {
+                r.out = Arrays.copyOf(r.out, Math.max(r.out.length * 2, r.length + bytes.length));
+            }
+            System.arraycopy(bytes, 0, r.out, r.length, bytes.length);
+            r.length += bytes.length;
+        }
+    }
+}
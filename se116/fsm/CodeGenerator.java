@@ -0,0 +1,218 @@
+package se116.fsm;
+
+import javax.tools.*;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/*
+ Turns a deterministic machine into Java code for the GENERATE command: one
+ loop per input type whose body switches on the state and then on the
+ character, with the targets as constants, so the JIT compiles the whole
+ automaton into jumps instead of loading every step from the table.
+ The source is compiled in memory with the JDK's compiler and defined as a
+ hidden class next to this one; it can also be written out for inspection.
+ HotSpot does not compile methods with more than 8000 bytes of bytecode, so
+ machines whose loop would be larger are refused and keep using the table.*/
+final class CodeGenerator {
+    static final String CLASS_NAME = "GeneratedFSM";
+    static final int MAX_METHOD_BYTES = 7_500; // estimated bytecode of one loop, below HotSpot's HugeMethodLimit
+    static final double MIN_SPEEDUP = 1.1;     // how much faster than the table the code must be to be used
+    private static final int SAMPLE = 1 << 16; // symbols of the walk both are timed on
+    private static final long WARMUP = 200_000_000; // ns both run before timing, until the JIT has compiled them
+    private static final int ROUNDS = 20;      // timed runs of each after the warmup
+    private static volatile int sink;          // end states of the timed runs, so the JIT keeps them
+
+    /*
+     Execution of a generated machine; same contract as CompiledFSM.run*/
+    interface Runner {
+        int run(int state, CharSequence input);
+
+        int run(int state, ByteBuffer in, int from, int to);
+    }
+
+    private CodeGenerator() {
+    }
+
+    /*
+     Rough size of one generated loop in bytes of bytecode: a tableswitch per
+     state over the range of its symbol characters and a store and jump per
+     distinct target*/
+    static long estimate(CompiledFSM fsm) {
+        long bytes = 64 + 16L * fsm.stateCount(); // loop, case folding, the state switch
+        for (int s = 0; s < fsm.stateCount(); s++) {
+            int min = -1, max = -1;
+            Set<Integer> targets = new HashSet<>();
+            for (int sym = 0; sym < CompiledFSM.ALPHABET; sym++) {
+                int to = fsm.step(s, sym);
+                if (to == CompiledFSM.NONE) continue;
+                if (min < 0) min = sym;
+                max = sym;
+                targets.add(to);
+            }
+            if (min >= 0) bytes += 16 + 4L * (symbol(max) - symbol(min) + 1) + 8L * targets.size();
+        }
+        return bytes;
+    }
+
+    static String source(CompiledFSM fsm) {
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("package se116.fsm;\n\n");
+        sb.append("import java.nio.ByteBuffer;\n\n");
+        sb.append("/*\n Generated by GENERATE from an FSM with ").append(fsm.stateCount()).append(" states.\n");
+        sb.append(" States are ids in declaration order, -1 means stuck. Lower case letters are\n");
+        sb.append(" folded to upper case before the switch. Initial state: ")
+                .append(fsm.initial == CompiledFSM.NONE ? "none" : fsm.initial + " " + fsm.stateName(fsm.initial))
+                .append(".*/\n");
+        sb.append("final class ").append(CLASS_NAME).append(" implements CodeGenerator.Runner {\n");
+
+        sb.append("    @Override\n");
+        sb.append("    public int run(int s, CharSequence in) {\n");
+        sb.append("        for (int i = 0, n = in.length(); i < n; i++) {\n");
+        sb.append("            int c = in.charAt(i);\n");
+        loopBody(fsm, sb);
+        sb.append("        }\n");
+        sb.append("        return s;\n");
+        sb.append("    }\n\n");
+
+        sb.append("    @Override\n");
+        sb.append("    public int run(int s, ByteBuffer in, int from, int to) {\n");
+        sb.append("        for (int i = from; i < to; i++) {\n");
+        sb.append("            int c = in.get(i) & 0xFF;\n");
+        loopBody(fsm, sb);
+        sb.append("        }\n");
+        sb.append("        return s;\n");
+        sb.append("    }\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    /*
+     Case folding and the switch over the states, inside the loop over c. Every
+     state switches on the character itself, a dense tableswitch from its first
+     to its last symbol, so there is no lookup of the symbol index per step.
+     The folding subtracts 32 from everything above '`' without a branch; no
+     character that is not a symbol ends up on one.*/
+    private static void loopBody(CompiledFSM fsm, StringBuilder sb) {
+        sb.append("            c -= (('a' - 1 - c) >> 31) & 32;\n");
+        sb.append("            switch (s) {\n");
+        for (int s = 0; s < fsm.stateCount(); s++) {
+            // Symbols grouped by target, so each target is one store and jump
+            Map<Integer, List<Integer>> byTarget = new LinkedHashMap<>();
+            for (int sym = 0; sym < CompiledFSM.ALPHABET; sym++) {
+                int to = fsm.step(s, sym);
+                if (to != CompiledFSM.NONE) byTarget.computeIfAbsent(to, k -> new ArrayList<>()).add(sym);
+            }
+            if (byTarget.isEmpty()) continue; // stuck on any symbol, handled by the default
+            sb.append("                case ").append(s).append(": // ").append(fsm.stateName(s)).append('\n');
+            sb.append("                    switch (c) {\n");
+            for (Map.Entry<Integer, List<Integer>> e : byTarget.entrySet()) {
+                sb.append("                        ");
+                for (int sym : e.getValue()) sb.append("case '").append(symbol(sym)).append("': ");
+                sb.append("s = ").append(e.getKey()).append("; continue; // -> ")
+                        .append(fsm.stateName(e.getKey())).append('\n');
+            }
+            sb.append("                        default: return -1;\n");
+            sb.append("                    }\n");
+        }
+        sb.append("                default: return -1;\n");
+        sb.append("            }\n");
+    }
+
+    /*
+     Times the table and the generated code of a machine on the same random walk
+     and returns the best of both in ns per symbol, {table, generated}. Every step
+     of the walk takes a random symbol the current state has a transition for, so
+     it is random input that never gets stuck: the case the jumps of the generated
+     code handle worst and the table does not care about. Zeros when the machine
+     has nowhere to go from its initial state. Takes a bit over WARMUP.*/
+    static double[] time(CompiledFSM fsm, Runner runner) {
+        Random random = new Random(fsm.version);
+        StringBuilder walk = new StringBuilder(SAMPLE);
+        int[] moves = new int[CompiledFSM.ALPHABET];
+        for (int s = fsm.initial; s != CompiledFSM.NONE && walk.length() < SAMPLE; ) {
+            int count = 0;
+            for (int sym = 0; sym < CompiledFSM.ALPHABET; sym++) {
+                if (fsm.step(s, sym) != CompiledFSM.NONE) moves[count++] = sym;
+            }
+            if (count == 0) break;
+            int sym = moves[random.nextInt(count)];
+            walk.append(symbol(sym));
+            s = fsm.step(s, sym);
+        }
+        if (walk.length() == 0) return new double[2];
+
+        CompiledFSM table = fsm.withRunner(null);
+        long tableNanos = Long.MAX_VALUE, generatedNanos = Long.MAX_VALUE;
+        int ends = 0;
+        long warm = System.nanoTime() + WARMUP;
+        for (int round = 0; round < ROUNDS; ) {
+            long start = System.nanoTime();
+            ends += table.run(walk);
+            long middle = System.nanoTime();
+            ends += runner.run(fsm.initial, walk);
+            long end = System.nanoTime();
+            if (end < warm) continue;
+            tableNanos = Math.min(tableNanos, middle - start);
+            generatedNanos = Math.min(generatedNanos, end - middle);
+            round++;
+        }
+        sink = ends;
+        return new double[]{(double) tableNanos / walk.length(), (double) generatedNanos / walk.length()};
+    }
+
+    /*
+     Compiles the source of the machine and defines it as a hidden class.
+     IllegalStateException when no compiler is available (a JRE) or javac fails.*/
+    static Runner define(String source) {
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) throw new IllegalStateException("no Java compiler available, GENERATE needs a JDK");
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        Map<String, ByteArrayOutputStream> classes = new HashMap<>();
+
+        // Source from memory, class files into memory
+        JavaFileObject input = new SimpleJavaFileObject(URI.create("string:///se116/fsm/" + CLASS_NAME + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavaFileManager files = new ForwardingJavaFileManager<>(javac.getStandardFileManager(diagnostics, null,
+                StandardCharsets.UTF_8)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location, String className, JavaFileObject.Kind kind,
+                                                       FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + kind.extension), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return classes.computeIfAbsent(className, k -> new ByteArrayOutputStream());
+                    }
+                };
+            }
+        };
+        List<String> options = List.of("-proc:none", "-g:none", "-classpath", System.getProperty("java.class.path"));
+        if (!javac.getTask(null, files, diagnostics, options, null, List.of(input)).call()) {
+            String message = diagnostics.getDiagnostics().isEmpty() ? "compilation failed"
+                    : diagnostics.getDiagnostics().get(0).getMessage(Locale.ROOT);
+            throw new IllegalStateException(message);
+        }
+
+        try {
+            byte[] bytes = classes.get("se116.fsm." + CLASS_NAME).toByteArray();
+            MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            return (Runner) lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class)).invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("unable to define the generated class: " + e, e);
+        }
+    }
+
+    private static char symbol(int index) {
+        return (char) (index < 10 ? '0' + index : 'A' + index - 10);
+    }
+}
@@ -0,0 +1,202 @@
+package se116.fsm;
+
+import java.util.Arrays;
+
+/*
+ Splits a command line into whitespace separated tokens in one pass over a
+ reusable char buffer. Tokens are kept as (start, end) positions; a second
+ buffer holds the upper-cased line so names and input strings can be read
+ without creating strings. Upper-cased tokens that are needed as strings
+ (command words, state and symbol names) are interned, so a name that was
+ seen before costs no allocation.
+ One instance per CommandProcessor, used from one thread.*/
+final class CommandTokenizer {
+    private static final int MAX_INTERNED = 1 << 22; // the intern table is dropped when it grows past this
+
+    private char[] raw = new char[256];   // the line as typed
+    private char[] upper = new char[256]; // the line upper-cased
+    private int length;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int count;
+    private Token[] views = new Token[16];
+
+    // Open addressing table of interned upper-case tokens
+    private String[] interned = new String[1024];
+    private int internedCount;
+
+    /*
+     Tokenizes a new line, the previous tokens and views become invalid*/
+    void reset(CharSequence line) {
+        length = line.length();
+        if (length > raw.length) {
+            raw = new char[Math.max(length, raw.length * 2)];
+            upper = new char[raw.length];
+        }
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            raw[i] = c;
+            upper[i] = c < 128 ? (c >= 'a' && c <= 'z' ? (char) (c - 32) : c) : Character.toUpperCase(c);
+        }
+
+        count = 0;
+        int i = 0;
+        while (i < length) {
+            if (isSpace(raw[i])) {
+                i++;
+                continue;
+            }
+            if (count == starts.length) grow();
+            starts[count] = i;
+            while (i < length && !isSpace(raw[i])) i++;
+            ends[count++] = i;
+        }
+    }
+
+    /*
+     Same characters as \s in the old split("\\s+")*/
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    int count() {
+        return count;
+    }
+
+    int start(int token) {
+        return starts[token];
+    }
+
+    int end(int token) {
+        return ends[token];
+    }
+
+    int lineLength() {
+        return length;
+    }
+
+    char upperAt(int pos) {
+        return upper[pos];
+    }
+
+    /*
+     Token as typed, e.g. a file name*/
+    String raw(int token) {
+        return new String(raw, starts[token], ends[token] - starts[token]);
+    }
+
+    /*
+     Upper-cased token, interned*/
+    String upper(int token) {
+        return intern(starts[token], ends[token]);
+    }
+
+    /*
+     Reusable upper-case view of a token, valid until the next reset*/
+    CharSequence view(int token) {
+        Token view = views[token];
+        if (view == null) view = views[token] = new Token();
+        view.start = starts[token];
+        view.end = ends[token];
+        return view;
+    }
+
+    /*
+     Tokens from `from` on as typed, for handlers that take an argument array*/
+    String[] args(int from) {
+        String[] args = new String[Math.max(count - from, 0)];
+        for (int i = 0; i < args.length; i++) args[i] = raw(from + i);
+        return args;
+    }
+
+    /*
+     Interns upper[from, to) as a string*/
+    String intern(int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) hash = 31 * hash + upper[i];
+        int mask = interned.length - 1;
+        int slot = mix(hash) & mask;
+        String s;
+        while ((s = interned[slot]) != null) {
+            if (s.hashCode() == hash && sameChars(s, from, to)) return s;
+            slot = (slot + 1) & mask;
+        }
+        s = new String(upper, from, to - from);
+        if (internedCount >= MAX_INTERNED) {
+            Arrays.fill(interned, null);
+            internedCount = 0;
+        }
+        interned[mixSlot(s, interned)] = s;
+        if (++internedCount * 2 > interned.length && interned.length < MAX_INTERNED * 2) rehash();
+        return s;
+    }
+
+    /*
+     True for a non-empty run of A-Z, a-z and 0-9, the rule for state names*/
+    static boolean isAlphanumeric(CharSequence s) {
+        if (s.length() == 0) return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (CompiledFSM.symbolIndex(s.charAt(i)) < 0) return false;
+        }
+        return true;
+    }
+
+    private boolean sameChars(String s, int from, int to) {
+        if (s.length() != to - from) return false;
+        for (int i = from; i < to; i++) {
+            if (s.charAt(i - from) != upper[i]) return false;
+        }
+        return true;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int mixSlot(String s, String[] table) {
+        int mask = table.length - 1;
+        int slot = mix(s.hashCode()) & mask;
+        while (table[slot] != null) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void rehash() {
+        String[] old = interned;
+        interned = new String[old.length * 2];
+        for (String s : old) {
+            if (s != null) interned[mixSlot(s, interned)] = s;
+        }
+    }
+
+    private void grow() {
+        starts = Arrays.copyOf(starts, starts.length * 2);
+        ends = Arrays.copyOf(ends, ends.length * 2);
+        views = Arrays.copyOf(views, views.length * 2);
+    }
+
+    // Upper-case view of a token in the line buffer
+    private final class Token implements CharSequence {
+        int start;
+        int end;
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return upper[start + index];
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return new String(upper, start + from, to - from);
+        }
+
+        @Override
+        public String toString() {
+            return new String(upper, start, end - start);
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package se116.fsm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/*
+ Immutable, table-driven form of the FSM used for execution.
+ States are interned to int ids in declaration order and symbols to a fixed
+ 0..35 index ('0'-'9' then 'A'-'Z'), so every step is one array load instead
+ of two string hash lookups.
+ Instances are never modified, so any number of threads can execute against
+ one while CommandProcessor publishes newer versions.
+ This is also the machine type of the library API: build one with builder()
+ or load() a compiled file, then call accepts() or run(). Nothing on that path
+ prints or formats anything.*/
+public final class CompiledFSM {
+    static final int ALPHABET = 36; // 10 digits + 26 letters
+    public static final int NONE = -1; // missing transition / no initial state
+    static final int EPSILON = ALPHABET; // symbol index of epsilon moves in nfa
+    static final String EPSILON_NAME = "EPSILON";
+    static final int DFA_CACHE_STATES = 10_000; // default bound of the DFA that executes an NFA
+
+    // char -> symbol index, -1 for anything that can never be a symbol
+    private static final byte[] SYMBOL_INDEX = new byte[128];
+
+    static {
+        Arrays.fill(SYMBOL_INDEX, (byte) -1);
+        for (char c = '0'; c <= '9'; c++) SYMBOL_INDEX[c] = (byte) (c - '0');
+        for (char c = 'A'; c <= 'Z'; c++) {
+            SYMBOL_INDEX[c] = (byte) (c - 'A' + 10);
+            SYMBOL_INDEX[c + ('a' - 'A')] = (byte) (c - 'A' + 10); // lower case maps to the same symbol
+        }
+    }
+
+    final int[] table;           // stateCount * ALPHABET, target id or NONE
+    final boolean[] finals;      // id -> accepting
+    final boolean[] declared;    // symbol index -> declared in SYMBOLS
+    final int initial;           // initial state id or NONE
+    final long version;          // edit version of CommandProcessor this was built from
+    final String[] symbolNames;  // declared symbols in declaration order
+    final int[] extra;           // (from, symbol position, to) for symbols without a table column
+    final int[] nfa;             // (from, symbol index or EPSILON, to) moves beyond the table, empty for a DFA
+
+    // id -> state name; filled lazily from nameData when the machine was loaded from a file
+    private final String[] stateNames;
+    private final ByteBuffer nameData;
+    private final int[] nameOffsets;
+    private volatile Map<String, Integer> stateIds; // name -> id, built on the first stateId()
+    private volatile Tokens tokens; // built on the first token lookup
+    private final CodeGenerator.Runner generated; // code of GENERATE that runs instead of the table, or null
+
+    // Executes accepts() of a nondeterministic machine, one DFA cache per thread
+    private final ThreadLocal<LazyDFA> dfa;
+
+    CompiledFSM(long version, String[] symbolNames, String[] stateNames, ByteBuffer nameData, int[] nameOffsets,
+                int[] table, boolean[] finals, int initial, int[] extra, int[] nfa) {
+        this(version, symbolNames, stateNames, nameData, nameOffsets, table, finals, initial, extra, nfa, null);
+    }
+
+    private CompiledFSM(long version, String[] symbolNames, String[] stateNames, ByteBuffer nameData,
+                        int[] nameOffsets, int[] table, boolean[] finals, int initial, int[] extra, int[] nfa,
+                        CodeGenerator.Runner generated) {
+        this.version = version;
+        this.generated = generated;
+        this.symbolNames = symbolNames;
+        this.stateNames = stateNames;
+        this.nameData = nameData;
+        this.nameOffsets = nameOffsets;
+        this.table = table;
+        this.finals = finals;
+        this.initial = initial;
+        this.extra = extra;
+        this.nfa = nfa;
+        this.dfa = nfa.length == 0 ? null : ThreadLocal.withInitial(() -> new LazyDFA(this, DFA_CACHE_STATES));
+        this.declared = new boolean[ALPHABET];
+        for (String sym : symbolNames) {
+            if (sym.length() == 1 && symbolIndex(sym.charAt(0)) >= 0) {
+                declared[symbolIndex(sym.charAt(0))] = true;
+            }
+        }
+    }
+
+    /*
+     Builds the table from the editable FSM definition kept by CommandProcessor.
+     Multi-character symbols can not occur in an input string, their transitions
+     are only kept in extra so that nothing is lost when the machine is saved.
+     nfaTransitions holds the additional targets and epsilon moves of NFA mode.*/
+    static CompiledFSM build(long version, Set<String> symbols, Set<String> states, String initialState,
+                             Set<String> finalStates, Map<String, Map<String, String>> transitions,
+                             Map<String, Map<String, Set<String>>> nfaTransitions) {
+        // Intern state names to dense ids
+        Map<String, Integer> ids = new HashMap<>(states.size() * 2);
+        String[] names = new String[states.size()];
+        for (String s : states) {
+            names[ids.size()] = s;
+            ids.put(s, ids.size());
+        }
+
+        String[] symbolNames = symbols.toArray(new String[0]);
+        Map<String, Integer> symbolPositions = new HashMap<>();
+        for (int i = 0; i < symbolNames.length; i++) symbolPositions.put(symbolNames[i], i);
+
+        int[] table = new int[names.length * ALPHABET];
+        Arrays.fill(table, NONE);
+        int[] extra = new int[0];
+        int extraLength = 0;
+        for (Map.Entry<String, Map<String, String>> row : transitions.entrySet()) {
+            Integer from = ids.get(row.getKey());
+            if (from == null) continue;
+            int base = from * ALPHABET;
+            for (Map.Entry<String, String> t : row.getValue().entrySet()) {
+                String sym = t.getKey();
+                Integer to = ids.get(t.getValue());
+                if (to == null) continue;
+                int index = sym.length() == 1 ? symbolIndex(sym.charAt(0)) : -1;
+                if (index >= 0) {
+                    table[base + index] = to;
+                } else if (symbolPositions.containsKey(sym)) {
+                    if (extraLength + 3 > extra.length) extra = Arrays.copyOf(extra, extra.length * 2 + 3);
+                    extra[extraLength++] = from;
+                    extra[extraLength++] = symbolPositions.get(sym);
+                    extra[extraLength++] = to;
+                }
+            }
+        }
+
+        int[] nfa = new int[0];
+        int nfaLength = 0;
+        for (Map.Entry<String, Map<String, Set<String>>> row : nfaTransitions.entrySet()) {
+            Integer from = ids.get(row.getKey());
+            if (from == null) continue;
+            for (Map.Entry<String, Set<String>> moves : row.getValue().entrySet()) {
+                String sym = moves.getKey();
+                int index = sym.equals(EPSILON_NAME) ? EPSILON : sym.length() == 1 ? symbolIndex(sym.charAt(0)) : -1;
+                if (index < 0) continue;
+                for (String target : moves.getValue()) {
+                    Integer to = ids.get(target);
+                    if (to == null) continue;
+                    if (nfaLength + 3 > nfa.length) nfa = Arrays.copyOf(nfa, nfa.length * 2 + 3);
+                    nfa[nfaLength++] = from;
+                    nfa[nfaLength++] = index;
+                    nfa[nfaLength++] = to;
+                }
+            }
+        }
+
+        boolean[] finals = new boolean[names.length];
+        for (String s : finalStates) {
+            Integer id = ids.get(s);
+            if (id != null) finals[id] = true;
+        }
+
+        Integer init = initialState == null ? null : ids.get(initialState);
+        return new CompiledFSM(version, symbolNames, names, null, null, table, finals,
+                init == null ? NONE : init, Arrays.copyOf(extra, extraLength), Arrays.copyOf(nfa, nfaLength));
+    }
+
+    /*
+     Maps an input character to its symbol index, -1 if it is not alphanumeric*/
+    static int symbolIndex(char c) {
+        return c < 128 ? SYMBOL_INDEX[c] : -1;
+    }
+
+    /*
+     Starts a new machine definition*/
+    public static FSMBuilder builder() {
+        return new FSMBuilder();
+    }
+
+    /*
+     Reads a file written by save() or the COMPILE command. The file is mapped,
+     state names are only decoded when they are asked for.*/
+    public static CompiledFSM load(Path path) throws IOException {
+        return FSMFile.read(path, 0);
+    }
+
+    /*
+     Writes the machine in the binary format read by load() and LOAD*/
+    public void save(Path path) throws IOException {
+        FSMFile.write(this, path);
+    }
+
+    /*
+     True unless NFA mode added a second target or an epsilon move somewhere*/
+    public boolean isDeterministic() {
+        return nfa.length == 0;
+    }
+
+    public int stateCount() {
+        return finals.length;
+    }
+
+    /*
+     Id of the initial state, NONE if there is none*/
+    public int initialState() {
+        return initial;
+    }
+
+    public boolean isFinal(int state) {
+        return finals[state];
+    }
+
+    /*
+     Declared symbols in declaration order; a symbol's position is its id*/
+    public List<String> symbols() {
+        return List.of(symbolNames);
+    }
+
+    /*
+     Dense id of a symbol name (case-insensitive), NONE if it is not declared*/
+    public int symbolId(CharSequence name) {
+        return symbolId(name, 0, name.length());
+    }
+
+    int symbolId(CharSequence s, int from, int to) {
+        int id = tokens().symbols.find(s, from, to);
+        return id < 0 ? NONE : id;
+    }
+
+    /*
+     Name of a state id, decoded from the mapped file on first use*/
+    public String stateName(int id) {
+        String name = stateNames[id];
+        if (name == null) {
+            int from = nameOffsets[id];
+            byte[] bytes = new byte[nameOffsets[id + 1] - from];
+            nameData.get(from, bytes);
+            name = new String(bytes, StandardCharsets.UTF_8);
+            stateNames[id] = name; // benign race, every thread decodes the same string
+        }
+        return name;
+    }
+
+    /*
+     Id of a state name (case-insensitive), NONE if there is no such state*/
+    public int stateId(String name) {
+        Map<String, Integer> ids = stateIds;
+        if (ids == null) {
+            ids = new HashMap<>(stateCount() * 2);
+            for (int s = 0; s < stateCount(); s++) ids.put(stateName(s), s);
+            stateIds = ids; // benign race like stateName()
+        }
+        return ids.getOrDefault(name.toUpperCase(), NONE);
+    }
+
+    /*
+     Follows a single transition, NONE if it is not defined*/
+    int step(int state, int symbol) {
+        return table[state * ALPHABET + symbol];
+    }
+
+    /*
+     Follows the transition of one input character, NONE if it is not defined
+     or the character is not a symbol. Deterministic machines only.*/
+    public int next(int state, char symbol) {
+        requireDeterministic();
+        int sym = symbolIndex(symbol);
+        return sym < 0 ? NONE : table[state * ALPHABET + sym];
+    }
+
+    /*
+     Runs the machine over the input and returns the id of the state it ends in,
+     or NONE when a character is not a symbol or a transition is missing.
+     Deterministic machines only. Does not allocate.*/
+    public int run(CharSequence input) {
+        return run(initial, input);
+    }
+
+    /*
+     Same as run(CharSequence), starting in the given state instead of the
+     initial one, so an input can be run piece by piece*/
+    public int run(int state, CharSequence input) {
+        requireDeterministic();
+        if (state == NONE) return NONE;
+        CodeGenerator.Runner g = generated;
+        if (g != null) return g.run(state, input);
+        final int[] t = table;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            int sym = symbolIndex(input.charAt(i));
+            if (sym < 0) return NONE;
+            state = t[state * ALPHABET + sym];
+            if (state == NONE) return NONE;
+        }
+        return state;
+    }
+
+    /*
+     Same as run(CharSequence) over the bytes [from, to) of a buffer, read with
+     absolute gets so several threads can share one buffer*/
+    int run(ByteBuffer in, int from, int to) {
+        return run(initial, in, from, to);
+    }
+
+    /*
+     Same as run(ByteBuffer, int, int), starting in the given state*/
+    int run(int state, ByteBuffer in, int from, int to) {
+        if (state == NONE) return NONE;
+        CodeGenerator.Runner g = generated;
+        if (g != null) return g.run(state, in, from, to);
+        final int[] t = table;
+        for (int i = from; i < to; i++) {
+            int sym = symbolIndex((char) (in.get(i) & 0xFF));
+            if (sym < 0) return NONE;
+            state = t[state * ALPHABET + sym];
+            if (state == NONE) return NONE;
+        }
+        return state;
+    }
+
+    /*
+     Accept/reject check. Deterministic machines do not allocate, an NFA runs
+     through a lazily built DFA of the calling thread.*/
+    public boolean accepts(CharSequence input) {
+        if (dfa != null) return dfa.get().accepts(input);
+        int end = run(initial, input);
+        return end != NONE && finals[end];
+    }
+
+    /*
+     Starts an incremental run of one input that arrives in chunks, see
+     ExecutionSession; LAST keeps the last `last` states of the path*/
+    public ExecutionSession session(ExecutionSession.PathMode mode, int last) {
+        return new ExecutionSession(this, DFA_CACHE_STATES, mode, last);
+    }
+
+    /*
+     Follows the transition of a symbol id, NONE if it is not defined.
+     Deterministic machines only.*/
+    public int nextToken(int state, int symbol) {
+        requireDeterministic();
+        return tokens().step(state, symbol);
+    }
+
+    /*
+     Runs the machine over a token stream: symbol names of any length separated
+     by commas or whitespace. Returns the id of the state it ends in, or NONE
+     when a token is not a symbol or a transition is missing. Each token costs
+     one perfect-hash lookup and one table load.
+     Deterministic machines only. Does not allocate.*/
+    public int runTokens(CharSequence input) {
+        return runTokens(initial, input);
+    }
+
+    /*
+     Same as runTokens(CharSequence), starting in the given state*/
+    public int runTokens(int state, CharSequence input) {
+        requireDeterministic();
+        Tokens k = tokens();
+        int i = 0, n = input.length();
+        while (state != NONE) {
+            while (i < n && isDelimiter(input.charAt(i))) i++;
+            if (i == n) break;
+            int from = i;
+            while (i < n && !isDelimiter(input.charAt(i))) i++;
+            int symbol = k.symbols.find(input, from, i);
+            if (symbol < 0) return NONE;
+            state = k.step(state, symbol);
+        }
+        return state;
+    }
+
+    public boolean acceptsTokens(CharSequence input) {
+        int end = runTokens(initial, input);
+        return end != NONE && finals[end];
+    }
+
+    static boolean isDelimiter(char c) {
+        return c == ',' || CommandTokenizer.isSpace(c);
+    }
+
+    Tokens tokens() {
+        Tokens k = tokens;
+        if (k == null) tokens = k = new Tokens(this); // benign race, every thread builds the same index
+        return k;
+    }
+
+    /*
+     Transitions by symbol id for token execution: the single-character symbols'
+     table entries plus the extra transitions of multi-character symbols.
+     Kept as a dense state x symbol table while that stays small, so a step is
+     one array load as for characters; beyond that as an open addressing hash
+     of (state, symbol) pairs, one probe in the usual case.*/
+    static final class Tokens {
+        private static final long DENSE_LIMIT = 1 << 22; // table entries, 16 MB
+        private static final long MAX_SLOTS = 1 << 30;    // largest hash table, a power of two
+        private static final long EMPTY = -1;
+
+        final SymbolTable symbols;
+        private final int width;      // symbol count, row length of the dense table
+        private final int[] dense;    // null when hashed
+        private final long[] keys;    // state * width + symbol, or EMPTY
+        private final int[] targets;
+        private final int mask;
+
+        Tokens(CompiledFSM fsm) {
+            symbols = new SymbolTable(fsm.symbolNames);
+            width = fsm.symbolNames.length;
+            int n = fsm.stateCount();
+            int[] columns = new int[width]; // symbol id -> table column, -1 for multi-character
+            long count = fsm.extra.length / 3;
+            for (int id = 0; id < width; id++) {
+                String name = fsm.symbolNames[id];
+                columns[id] = name.length() == 1 ? symbolIndex(name.charAt(0)) : -1;
+                if (columns[id] < 0) continue;
+                for (int s = 0; s < n; s++) {
+                    if (fsm.table[s * ALPHABET + columns[id]] != NONE) count++;
+                }
+            }
+
+            if ((long) n * width <= DENSE_LIMIT) {
+                dense = new int[n * width];
+                Arrays.fill(dense, NONE);
+                keys = null;
+                targets = null;
+                mask = 0;
+            } else {
+                dense = null;
+                // Load at most 0.5, or 0.75 once the table is at its largest
+                long size = Math.min(Long.highestOneBit(Math.max(count * 2, 2)) * 2, MAX_SLOTS);
+                if (count > size - size / 4) {
+                    throw new IllegalStateException("too many transitions for token execution (" + count
+                            + ", at most " + (MAX_SLOTS - MAX_SLOTS / 4) + ")");
+                }
+                keys = new long[(int) size];
+                Arrays.fill(keys, EMPTY);
+                targets = new int[(int) size];
+                mask = (int) size - 1;
+            }
+            for (int s = 0; s < n; s++) {
+                for (int id = 0; id < width; id++) {
+                    int c = columns[id];
+                    if (c >= 0 && fsm.table[s * ALPHABET + c] != NONE) put(s, id, fsm.table[s * ALPHABET + c]);
+                }
+            }
+            for (int i = 0; i < fsm.extra.length; i += 3) put(fsm.extra[i], fsm.extra[i + 1], fsm.extra[i + 2]);
+        }
+
+        private void put(int state, int symbol, int target) {
+            if (dense != null) {
+                dense[state * width + symbol] = target;
+                return;
+            }
+            long key = (long) state * width + symbol;
+            int slot = mix(key) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != key) slot = (slot + 1) & mask;
+            keys[slot] = key;
+            targets[slot] = target;
+        }
+
+        int step(int state, int symbol) {
+            if (dense != null) return dense[state * width + symbol];
+            long key = (long) state * width + symbol;
+            int slot = mix(key) & mask;
+            long k;
+            while ((k = keys[slot]) != key) {
+                if (k == EMPTY) return NONE;
+                slot = (slot + 1) & mask;
+            }
+            return targets[slot];
+        }
+
+        private static int mix(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+    }
+
+    /*
+     The same machine, of the same version, whose run() executes the code GENERATE
+     built for it instead of the table; null goes back to the table. Shares
+     everything else with this one.*/
+    CompiledFSM withRunner(CodeGenerator.Runner runner) {
+        if (runner != null) requireDeterministic();
+        return new CompiledFSM(version, symbolNames, stateNames, nameData, nameOffsets, table, finals, initial,
+                extra, nfa, runner);
+    }
+
+    boolean isGenerated() {
+        return generated != null;
+    }
+
+    private void requireDeterministic() {
+        if (nfa.length != 0) throw new IllegalStateException("nondeterministic FSM has no single state to run to");
+    }
+}
@@ -0,0 +1,152 @@
+package se116.fsm;
+
+import java.util.Arrays;
+
+/*
+ Incremental execution of one input that arrives in chunks.
+ Start one with CompiledFSM.session() (the REPL's SESSION command uses the
+ constructor), feed() any number of chunks, then finish().
+ The session runs on the snapshot it was started with, so editing the FSM
+ meanwhile does not affect it. Memory is constant unless the full path is
+ recorded: PathMode.LAST keeps the last n states in a ring, FULL keeps all.
+ A nondeterministic FSM runs through a LazyDFA of its own and has no path.
+ Not thread-safe.*/
+public final class ExecutionSession {
+    // Which states of the run are kept for the path
+    public enum PathMode {
+        OFF,
+        LAST,
+        FULL
+    }
+
+    final CompiledFSM fsm;
+    private final LazyDFA dfa; // null for a deterministic FSM
+    private final PathMode mode;
+
+    private int state;
+    private long consumed;
+    private String error;
+    private boolean finished;
+
+    // Path: all states for FULL, a ring of the last ones for LAST
+    private int[] path;
+    private long recorded;
+
+    ExecutionSession(CompiledFSM fsm, int dfaCacheStates, PathMode mode, int last) {
+        this.fsm = fsm;
+        this.dfa = fsm.isDeterministic() ? null : new LazyDFA(fsm, dfaCacheStates);
+        this.mode = dfa == null ? mode : PathMode.OFF;
+        if (fsm.initial == CompiledFSM.NONE) {
+            error = "Error: no initial state defined";
+            state = CompiledFSM.NONE;
+            return;
+        }
+        state = dfa == null ? fsm.initial : dfa.start();
+        if (this.mode == PathMode.LAST) path = new int[Math.max(last, 1)];
+        else if (this.mode == PathMode.FULL) path = new int[16];
+        record(state);
+    }
+
+    /*
+     Runs the next chunk of input. Returns false once the input had an invalid
+     or undeclared symbol, the session then only reports that error.*/
+    public boolean feed(CharSequence chunk) {
+        if (finished) throw new IllegalStateException("session is finished");
+        if (error != null) return false;
+        int s = state;
+        boolean[] declared = fsm.declared;
+        try {
+            for (int i = 0, n = chunk.length(); i < n; i++) {
+                char c = chunk.charAt(i);
+                int sym = CompiledFSM.symbolIndex(c);
+                if (sym < 0) {
+                    error = "Error: input must be alphanumeric (A–Z, 0–9 only)";
+                    return false;
+                }
+                if (!declared[sym]) {
+                    error = "Error: symbol '" + Character.toUpperCase(c) + "' not recognized";
+                    return false;
+                }
+                consumed++;
+                // Once stuck the rest of the input is only validated
+                if (s == CompiledFSM.NONE) continue;
+                if (dfa == null) {
+                    s = fsm.step(s, sym);
+                    if (s != CompiledFSM.NONE && mode != PathMode.OFF) record(s);
+                } else {
+                    s = dfa.step(s, sym);
+                    if (s == LazyDFA.DEAD) s = CompiledFSM.NONE;
+                }
+            }
+        } finally {
+            state = s;
+        }
+        return true;
+    }
+
+    /*
+     Ends the input, true if it is accepted. An input with an error is not accepted.*/
+    public boolean finish() {
+        finished = true;
+        return accepting();
+    }
+
+    public boolean accepting() {
+        if (error != null || state == CompiledFSM.NONE) return false;
+        return dfa == null ? fsm.finals[state] : dfa.accepting(state);
+    }
+
+    /*
+     Current state id of the FSM, NONE when a transition was missing. For a
+     nondeterministic FSM it is not an FSM state, see isDeterministic().*/
+    public int state() {
+        return state;
+    }
+
+    public boolean isDeterministic() {
+        return dfa == null;
+    }
+
+    public long consumed() {
+        return consumed;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public PathMode pathMode() {
+        return mode;
+    }
+
+    /*
+     Recorded states in order. With LAST these are the last ones of the run,
+     truncated() tells whether earlier states were dropped.*/
+    public int[] path() {
+        if (mode == PathMode.OFF) return new int[0];
+        if (mode == PathMode.FULL) return Arrays.copyOf(path, (int) recorded);
+        int n = (int) Math.min(recorded, path.length);
+        int[] out = new int[n];
+        int first = (int) ((recorded - n) % path.length);
+        for (int i = 0; i < n; i++) out[i] = path[(first + i) % path.length];
+        return out;
+    }
+
+    public boolean truncated() {
+        return mode == PathMode.LAST && recorded > path.length;
+    }
+
+    private void record(int s) {
+        if (mode == PathMode.OFF) return;
+        if (mode == PathMode.FULL) {
+            if (recorded == path.length) {
+                if (path.length == Integer.MAX_VALUE - 8) throw new IllegalStateException("path too long to record");
+                path = Arrays.copyOf(path, (int) Math.min((long) path.length * 2, Integer.MAX_VALUE - 8));
+            }
+            path[(int) recorded] = s;
+        } else {
+            path[(int) (recorded % path.length)] = s;
+        }
+        recorded++;
+    }
+}
@@ -0,0 +1,125 @@
+package se116.fsm;
+
+import java.util.*;
+
+/*
+ Builds a CompiledFSM without the REPL, for embedding the matcher in other code.
+ Names follow the REPL rules: symbols and states are alphanumeric names,
+ case-insensitive. Single-character symbols are matched by run(), symbols of
+ any length by runTokens(). Unlike the REPL nothing is added automatically
+ and nothing is printed; validate() reports every problem as a
+ ValidationError and build() refuses a definition that has any.
+ The calls may come in any order. The initial state defaults to the first
+ declared state, as in the REPL.
+ Not thread-safe; the machine it builds is.*/
+public final class FSMBuilder {
+    private final List<String> symbols = new ArrayList<>();
+    private final List<String> states = new ArrayList<>();
+    private final List<String> finals = new ArrayList<>();
+    private final List<String[]> transitions = new ArrayList<>(); // {from, symbol, to}
+    private String initial;
+    private boolean nondeterministic;
+
+    FSMBuilder() {
+    }
+
+    public FSMBuilder symbols(String... names) {
+        for (String name : names) symbols.add(name.toUpperCase());
+        return this;
+    }
+
+    public FSMBuilder states(String... names) {
+        for (String name : names) states.add(name.toUpperCase());
+        return this;
+    }
+
+    public FSMBuilder initial(String state) {
+        initial = state.toUpperCase();
+        return this;
+    }
+
+    public FSMBuilder finals(String... names) {
+        for (String name : names) finals.add(name.toUpperCase());
+        return this;
+    }
+
+    /*
+     Adds a transition. With nondeterministic(true) the symbol may be EPSILON
+     and a state may have several targets for one symbol.*/
+    public FSMBuilder transition(String from, String symbol, String to) {
+        transitions.add(new String[]{from.toUpperCase(), symbol.toUpperCase(), to.toUpperCase()});
+        return this;
+    }
+
+    /*
+     Allows NFA transitions, like NFA ON in the REPL*/
+    public FSMBuilder nondeterministic(boolean allowed) {
+        nondeterministic = allowed;
+        return this;
+    }
+
+    /*
+     All problems of the definition so far, empty if build() will succeed*/
+    public List<ValidationError> validate() {
+        List<ValidationError> errors = new ArrayList<>();
+        collect(errors, new LinkedHashSet<>(), new LinkedHashSet<>(), new LinkedHashMap<>(), new LinkedHashMap<>());
+        return errors;
+    }
+
+    /*
+     Builds the immutable machine, FSMValidationException if validate() has errors*/
+    public CompiledFSM build() {
+        List<ValidationError> errors = new ArrayList<>();
+        Set<String> symbolSet = new LinkedHashSet<>();
+        Set<String> stateSet = new LinkedHashSet<>();
+        Map<String, Map<String, String>> table = new LinkedHashMap<>();
+        Map<String, Map<String, Set<String>>> nfa = new LinkedHashMap<>();
+        collect(errors, symbolSet, stateSet, table, nfa);
+        if (!errors.isEmpty()) throw new FSMValidationException(errors);
+        String init = initial != null ? initial : stateSet.iterator().next();
+        return CompiledFSM.build(0, symbolSet, stateSet, init, new LinkedHashSet<>(finals), table, nfa);
+    }
+
+    // Checks the definition with the REPL's rules and fills the collections CompiledFSM.build() takes
+    private void collect(List<ValidationError> errors, Set<String> symbolSet, Set<String> stateSet,
+                         Map<String, Map<String, String>> table, Map<String, Map<String, Set<String>>> nfa) {
+        for (String s : symbols) {
+            if (add(errors, Validator.symbol(s, symbolSet))) symbolSet.add(s);
+        }
+        for (String s : states) {
+            if (add(errors, Validator.state(s, stateSet))) stateSet.add(s);
+        }
+
+        if (initial != null) {
+            add(errors, Validator.knownState(initial, stateSet, "initial state"));
+        } else if (stateSet.isEmpty()) {
+            errors.add(new ValidationError(ValidationError.Kind.NO_INITIAL_STATE, "",
+                    "no initial state defined"));
+        }
+        for (String s : finals) add(errors, Validator.knownState(s, stateSet, "final state"));
+
+        for (String[] t : transitions) {
+            String from = t[0], symbol = t[1], to = t[2];
+            boolean known = add(errors, Validator.knownState(from, stateSet, "source state"))
+                    & add(errors, Validator.knownState(to, stateSet, "destination state"));
+            if (!add(errors, Validator.knownSymbol(symbol, symbolSet)) || !known) continue;
+
+            Map<String, String> row = table.computeIfAbsent(from, k -> new LinkedHashMap<>());
+            String current = row.get(symbol);
+            if (!add(errors, Validator.move(from, symbol, to, current, nondeterministic))) continue;
+            if (Validator.nfaMove(symbol, current, to)) {
+                nfa.computeIfAbsent(from, k -> new LinkedHashMap<>())
+                        .computeIfAbsent(symbol, k -> new LinkedHashSet<>()).add(to);
+            } else {
+                row.put(symbol, to);
+            }
+        }
+    }
+
+    // Records the error if there is one, true if there was none
+    private static boolean add(List<ValidationError> errors, ValidationError error) {
+        if (error == null) return true;
+        errors.add(error);
+        return false;
+    }
+}
@@ -0,0 +1,1991 @@
+package se116.fsm;
+
+import java.time.LocalDateTime;
+import java.util.Scanner;
+import java.util.*;
+import java.io.*; // Added for file handling
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class FSMDesigner {
+    private static final int SCRIPT_CHUNK = 1 << 13; // chars of a streamed TRANSITIONS block passed at once
+
+    public static void main(String[] args) {
+        OutputSink console = OutputSink.CONSOLE;
+        // Check for command line arguments: a script to run, or a compiled FSM to serve,
+        // optionally after recovering from a journal directory
+        if (args.length > 0 && args[0].equals("--serve")) {
+            serve(args, console);
+            return;
+        }
+        String journal = null;
+        if (args.length > 1 && args[0].equals("--journal")) {
+            journal = args[1];
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if (args.length > 1 || (args.length == 1 && args[0].startsWith("--"))) {
+            console.line("Usage: java FSMDesigner [--journal <dir>] [script] | --serve <compiled file> [port]").flush();
+            return;
+        }
+        if (args.length == 1) {
+            CommandProcessor processor = new CommandProcessor();
+            if (journal != null) processor.startJournal(journal);
+            try {
+                runScript(Paths.get(args[0]), processor);
+            } catch (IOException | UncheckedIOException e) {
+                processor.print("Error: unable to read script '" + args[0] + "': " + e.getMessage());
+            }
+            processor.close();
+            console.flush();
+            return;
+        }
+
+        // Initialize program with version and timestamp
+        String versionNo = "v1.0";
+        console.line("FSM DESIGNER " + versionNo + " " + LocalDateTime.now());
+
+        // Set up input scanner and command processor
+        Scanner sc = new Scanner(System.in);
+        StringBuilder commandBuilder = new StringBuilder();
+        CommandProcessor processor = new CommandProcessor();
+        if (journal != null) processor.startJournal(journal);
+
+        // Main command processing loop
+        while (true) {
+            processor.commit(); // edits are on disk before the user sees their output
+            console.prompt("? "); // output of the previous command goes out with the prompt
+            if (!acceptLine(sc.nextLine().trim(), commandBuilder, processor)) {
+                console.flush();
+                break;
+            }
+        }
+
+        sc.close();
+    }
+
+    /*
+     Serves a compiled FSM on localhost until the process is stopped*/
+    private static void serve(String[] args, OutputSink console) {
+        if (args.length < 2 || args.length > 3) {
+            console.line("Usage: java FSMDesigner --serve <compiled file> [port]").flush();
+            return;
+        }
+        int port;
+        try {
+            port = args.length == 3 ? Integer.parseInt(args[2]) : 0;
+        } catch (NumberFormatException e) {
+            console.line("Error: invalid port '" + args[2] + "'").flush();
+            return;
+        }
+        try (FSMServer server = new FSMServer(Paths.get(args[1]), port)) {
+            console.line("Serving " + args[1] + " on " + InetAddress.getLoopbackAddress().getHostAddress()
+                    + ":" + server.port()).flush();
+            server.serve();
+        } catch (IOException | IllegalArgumentException e) {
+            console.line("Error: unable to serve '" + args[1] + "': " + e.getMessage()).flush();
+        }
+    }
+
+    /*
+     Handles one trimmed input line: comments and empty lines are skipped, a
+     TRANSITIONS block is collected until the line with ';', other commands must
+     end with ';'. Returns false on EXIT.*/
+    private static boolean acceptLine(String line, StringBuilder commandBuilder, CommandProcessor processor) {
+        // Skip comments and empty lines
+        if (line.startsWith(";") || line.isEmpty()) {
+            return true;
+        }
+        // Check if this line ends a command
+        boolean hasSemicolon = line.contains(";");
+        boolean isTransitionsStart = commandBuilder.length() == 0
+                && line.toUpperCase().startsWith("TRANSITIONS");
+
+        // Handle lines without a semicolon
+        if (!hasSemicolon) {
+            if (commandBuilder.length() > 0 || isTransitionsStart) {
+                // Continue building a multi-line TRANSITIONS block
+                commandBuilder.append(line).append(" ");
+            } else {
+                // Single-line commands must end with ';'
+                processor.print("Error: Semicolon expected");
+            }
+            return true;
+        }
+
+        // Extract command up to semicolon
+        int index = line.indexOf(';');
+        String part = line.substring(0, index).trim();
+        commandBuilder.append(part).append(" ");
+        String fullCommand = commandBuilder.toString().trim();
+        commandBuilder.setLength(0);  // Reset builder for next command
+
+        // Exit condition
+        if (fullCommand.equalsIgnoreCase("EXIT")) {
+            processor.print("TERMINATED BY USER");
+            processor.close(); // flushes the log
+            return false;
+        }
+        processor.process(fullCommand);
+        return true;
+    }
+
+    /*
+     Runs a script file without prompts. Lines are handled like in the REPL,
+     except that a TRANSITIONS block is applied entry by entry while it is read,
+     so a block of millions of transitions is never held in memory.*/
+    private static void runScript(Path path, CommandProcessor processor) throws IOException {
+        try (ScriptReader in = new ScriptReader(path)) {
+            StringBuilder line = new StringBuilder();
+            StringBuilder commandBuilder = new StringBuilder();
+            while (true) {
+                // Skip leading whitespace and empty lines
+                int c;
+                do {
+                    c = in.read();
+                } while (c != ScriptReader.EOF && c <= ' ');
+                if (c == ScriptReader.EOF) break;
+
+                // First word, to recognize a TRANSITIONS block before the line is buffered
+                line.setLength(0);
+                while (c != ScriptReader.EOF && c > ' ' && c != ';') {
+                    line.append((char) c);
+                    c = in.read();
+                }
+                if (c != ScriptReader.EOF) in.unread();
+                if (commandBuilder.length() == 0 && line.toString().equalsIgnoreCase("TRANSITIONS")) {
+                    streamTransitions(in, processor);
+                    continue;
+                }
+
+                in.readLine(line);
+                if (!acceptLine(line.toString().trim(), commandBuilder, processor)) return;
+            }
+            if (commandBuilder.length() > 0) {
+                processor.print("Error: Semicolon expected");
+            }
+        }
+    }
+
+    /*
+     Feeds the text of a TRANSITIONS block up to its ';' to the processor in
+     chunks. Line breaks count as spaces and comment lines are skipped, as in the REPL.*/
+    private static void streamTransitions(ScriptReader in, CommandProcessor processor) throws IOException {
+        processor.beginTransitions();
+        StringBuilder chunk = new StringBuilder(SCRIPT_CHUNK);
+        boolean lineStart = false;
+        int c;
+        while ((c = in.read()) != ScriptReader.EOF) {
+            if (lineStart) {
+                if (c <= ' ' && c != '\n') continue;
+                lineStart = false;
+                if (c == ';') {
+                    // Comment line inside the block
+                    while ((c = in.read()) != ScriptReader.EOF && c != '\n') ;
+                    lineStart = true;
+                    continue;
+                }
+            }
+            if (c == ';') {
+                // End of the block, the rest of the line is ignored like in the REPL
+                while ((c = in.read()) != ScriptReader.EOF && c != '\n') ;
+                c = ';';
+                break;
+            }
+            if (c == '\n') {
+                chunk.append(' ');
+                lineStart = true;
+            } else {
+                chunk.append((char) c);
+            }
+            if (chunk.length() >= SCRIPT_CHUNK) {
+                processor.feedTransitions(chunk);
+                chunk.setLength(0);
+            }
+        }
+        processor.feedTransitions(chunk);
+        processor.endTransitions();
+        processor.publishIfRequested();
+        if (c == ScriptReader.EOF) {
+            processor.print("Error: Semicolon expected");
+        }
+    }
+}
+
+class CommandProcessor implements Serializable {
+    // FSM components
+    private Set<String> symbols;
+    private Set<String> states = new LinkedHashSet<>();
+    private String initialState = null;
+    private Set<String> finalStates = new LinkedHashSet<>();
+    private Map<String, Map<String, String>> transitions = new LinkedHashMap<>();
+    // NFA mode: targets beyond the first one per (from, symbol) and epsilon moves
+    private Map<String, Map<String, Set<String>>> nfaTransitions = new LinkedHashMap<>();
+    // Reverse index: target state -> (source, symbol) pairs of the transitions and NFA moves into it
+    private transient Map<String, Set<Edge>> incoming = new HashMap<>();
+    private boolean nfaMode = false;
+    private int dfaCacheStates = CompiledFSM.DFA_CACHE_STATES; // bound of the lazily built DFA used to execute an NFA
+    // Log of the LOG command, commands and everything printed go through its ring buffer
+    private transient volatile AsyncLogger logger = null;
+    // Input being executed in pieces by the SESSION command
+    private transient ExecutionSession session = null;
+    // Counters of the STATS command, null while it is OFF
+    private transient Stats stats = null;
+    // Edit journal of the JOURNAL command, null while it is off
+    private transient Journal journal = null;
+    // Buffered output of all handlers, flushed by the caller of process(); muted while a journal is replayed
+    private transient OutputSink sink;
+    // Copy-on-write snapshots: every edit bumps version under the lock, the editing thread
+    // publishes the rebuilt snapshot and other threads only ever read what was published
+    private transient volatile long version = 0;
+    private transient volatile CompiledFSM snapshot = null;
+    private transient volatile boolean publishRequested = false; // a reader saw a stale snapshot
+    // Machine read by LOAD whose editable model has not been rebuilt yet
+    private transient CompiledFSM pendingModel = null;
+    // DFA cache of the REPL thread for the current snapshot, only used when the FSM is an NFA
+    private transient LazyDFA lazyDfa = null;
+    // Reusable tokenizer of process(), the REPL calls it from one thread
+    private final transient CommandTokenizer tokens = new CommandTokenizer();
+    private final transient int[] entryFields = new int[6]; // (start, end) of the 3 fields of a TRANSITIONS entry
+    // TRANSITIONS block streamed from a script: text of the entry being read, empty
+    // entries not reported yet (they are errors unless only commas follow), start time for STATS
+    private final transient StringBuilder streamEntry = new StringBuilder();
+    private transient long streamEmpty;
+    private transient boolean streamComma;
+    private transient long streamStarted;
+    private transient int[] tokenIds = new int[16]; // symbol ids of an EXECUTE-TOKENS input
+
+    // Runs one command; t holds the whole line, the command is token 0
+    private interface Handler {
+        void handle(CommandProcessor p, CommandTokenizer t);
+    }
+
+    // Every command by name; STATS has a row for each one
+    private static final Map<String, Handler> HANDLERS = new LinkedHashMap<>();
+
+    static {
+        HANDLERS.put("SYMBOLS", (p, t) -> p.handleSymbols(t.args(1)));
+        HANDLERS.put("STATES", (p, t) -> p.handleStates(t.args(1)));
+        HANDLERS.put("INITIAL-STATE", (p, t) -> p.handleInitialState(t.args(1)));
+        HANDLERS.put("FINAL-STATES", (p, t) -> p.handleFinalStates(t.args(1)));
+        HANDLERS.put("TRANSITION", (p, t) -> p.handleTransition(t));
+        HANDLERS.put("TRANSITIONS", (p, t) -> p.handleTransitions(t));
+        HANDLERS.put("DELETE", (p, t) -> p.handleDelete(t.args(1)));
+        HANDLERS.put("PRINT", (p, t) -> p.handlePrint(t.args(1)));
+        HANDLERS.put("EXECUTE", (p, t) -> p.handleExecute(t));
+        HANDLERS.put("EXECUTE-TOKENS", (p, t) -> p.handleExecuteTokens(t));
+        HANDLERS.put("EXECUTE-FILE", (p, t) -> p.handleExecuteFile(t.args(1))); // Batch execution, one input per line
+        HANDLERS.put("EXECUTE-PARALLEL", (p, t) -> p.handleExecuteParallel(t.args(1))); // One long input on several cores
+        HANDLERS.put("SCAN", (p, t) -> p.handleScan(t.args(1))); // Every match inside a file
+        HANDLERS.put("LOG", (p, t) -> p.handleLog(t.args(1)));
+        HANDLERS.put("COMPILE", (p, t) -> p.handleCompile(t.args(1)));
+        HANDLERS.put("LOAD", (p, t) -> p.handleLoad(t.args(1)));
+        HANDLERS.put("NFA", (p, t) -> p.handleNfa(t.args(1)));
+        HANDLERS.put("MINIMIZE", (p, t) -> p.handleMinimize());
+        HANDLERS.put("CLEAR", (p, t) -> p.handleClear());
+        HANDLERS.put("STATS", (p, t) -> p.handleStats(t.args(1)));
+        HANDLERS.put("SESSION", (p, t) -> p.handleSession(t));
+        HANDLERS.put("INTERSECT", (p, t) -> p.handleProduct("INTERSECT", t.args(1)));
+        HANDLERS.put("UNION", (p, t) -> p.handleProduct("UNION", t.args(1)));
+        HANDLERS.put("COMPLEMENT", (p, t) -> p.handleComplement(t.args(1)));
+        HANDLERS.put("EQUIVALENT", (p, t) -> p.handleCompare("EQUIVALENT", t.args(1)));
+        HANDLERS.put("INCLUDED", (p, t) -> p.handleCompare("INCLUDED", t.args(1)));
+        HANDLERS.put("ANALYZE", (p, t) -> p.handleAnalyze(t.args(1)));
+        HANDLERS.put("JOURNAL", (p, t) -> p.handleJournal(t.args(1)));
+        HANDLERS.put("GENERATE", (p, t) -> p.handleGenerate(t.args(1)));
+    }
+
+    // Commands that only need the snapshot, so they run on a LOADed file without rebuilding the model
+    private static final Set<String> SNAPSHOT_COMMANDS = Set.of("EXECUTE", "EXECUTE-TOKENS", "EXECUTE-FILE", "EXECUTE-PARALLEL",
+            "SCAN", "COMPILE", "LOAD", "LOG", "JOURNAL", "GENERATE", "INTERSECT", "UNION", "COMPLEMENT", "EQUIVALENT", "INCLUDED",
+            "ANALYZE");
+    // Edits the journal records; they are replayed through process() on recovery
+    private static final Set<String> JOURNALED_COMMANDS = Set.of("SYMBOLS", "STATES", "INITIAL-STATE", "FINAL-STATES",
+            "TRANSITION", "TRANSITIONS", "DELETE", "CLEAR", "MINIMIZE");
+    // Commands that install a machine from outside the model, the journal takes a snapshot after them instead
+    private static final Set<String> CHECKPOINT_COMMANDS = Set.of("LOAD", "INTERSECT", "UNION", "COMPLEMENT");
+
+    public CommandProcessor() { // constructor
+        this(OutputSink.CONSOLE);
+    }
+
+    CommandProcessor(OutputSink sink) {
+        this.symbols = new LinkedHashSet<>(); // to store in a sorted way
+        this.sink = sink;
+        snapshot(); // readers start with the empty machine
+    }
+
+    /*
+     Processes the given command line input
+     The full command string to process
+     Output stays in the sink until the caller flushes it, e.g. before the next prompt*/
+
+    public void process(String commandLine) {
+        AsyncLogger log = logger;
+        if (log != null) log.log(AsyncLogger.COMMAND, commandLine);
+
+        CommandTokenizer t = tokens;
+        t.reset(commandLine); // to split the line in pieces, no regex and no copies
+
+        // The first word is the command, upper-cased and interned by the tokenizer
+        String command = t.count() == 0 ? "" : t.upper(0);
+
+        Stats st = stats;
+        long started = st != null ? System.nanoTime() : 0;
+        long before = version;
+        boolean hasArgs = t.count() > 1;
+
+        if (pendingModel != null && !SNAPSHOT_COMMANDS.contains(command)) {
+            materialize();
+        }
+
+        // Route to appropriate handler
+        Handler handler = HANDLERS.get(command);
+        if (handler != null) {
+            handler.handle(this, t);
+        } else {
+            out("Warning: unknown command '" + command + "'");
+        }
+
+        Journal j = journal;
+        if (j != null) journal(j, command, commandLine, hasArgs, before);
+        if (st != null) st.command(command, System.nanoTime() - started);
+        publishIfRequested();
+    }
+
+    /*
+     Records an edit in the journal, or takes a snapshot after a change that can
+     not be replayed. Commands that changed nothing are left out.*/
+    private void journal(Journal j, String command, String commandLine, boolean hasArgs, long before) {
+        try {
+            if (CHECKPOINT_COMMANDS.contains(command)) {
+                reportSnapshotFailure(j);
+                if (version != before) j.checkpoint(snapshot(), true, journalHeader());
+                return;
+            }
+            if (JOURNALED_COMMANDS.contains(command) ? version != before : command.equals("NFA") && hasArgs) {
+                j.append(Journal.COMMAND, commandLine);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            stopJournal("Error: journal stopped: " + e.getMessage());
+            return;
+        }
+        snapshotIfFull(j);
+    }
+
+    // Starts a new journal segment with a background snapshot once the current one is big enough
+    private void snapshotIfFull(Journal j) {
+        try {
+            if (!j.full()) return;
+            reportSnapshotFailure(j);
+            j.checkpoint(snapshot(), false, journalHeader());
+        } catch (IOException | UncheckedIOException e) {
+            stopJournal("Error: journal stopped: " + e.getMessage());
+        }
+    }
+
+    // Prints why the last background snapshot failed; the journal goes on, recovery replays more
+    private void reportSnapshotFailure(Journal j) {
+        IOException e = j.takeSnapshotFailure();
+        if (e != null) out("Error: journal snapshot failed: " + e.getMessage() + ", the older segments are kept");
+    }
+
+    // Settings outside the compiled machine, recorded at the start of every journal segment
+    private List<String> journalHeader() {
+        List<String> header = new ArrayList<>();
+        if (nfaMode) header.add("NFA ON");
+        if (dfaCacheStates != CompiledFSM.DFA_CACHE_STATES) header.add("NFA CACHE " + dfaCacheStates);
+        return header;
+    }
+
+    /*
+     Handles SYMBOLS command - manages FSM alphabet symbols
+     Array of symbols to add (empty for listing)*/
+
+    private synchronized void handleSymbols(String[] signs) {
+        if (signs.length == 0) {
+            // List current symbols
+            if (symbols.isEmpty()) {
+                out("No symbols defined yet.");
+            } else {
+                join(symbols).line();
+            }
+            return;
+        }
+
+        // Process each symbol
+        for (String sign : signs) {
+            String symbol = sign.toUpperCase();
+            // Only alphanumeric characters (A-Z, 0-9), not EPSILON, not declared yet
+            ValidationError e = Validator.symbol(symbol, symbols);
+            if (e != null) {
+                out("Warning: " + e.message());
+            } else {
+                symbols.add(symbol);
+                version++;
+            }
+        }
+    }
+
+    /*
+     Handles STATES command - manages FSM states
+     Array of state names to add (empty for listing)*/
+
+    private synchronized void handleStates(String[] stateNames) {
+        if (stateNames.length == 0) {
+            // List current states with their properties
+            if (states.isEmpty()) {
+                out("No states defined yet.");
+            } else {
+                for (String s : states) stateInfo(s).line();
+            }
+            return;
+        }
+
+        // Process each state
+        for (String state : stateNames) {
+            String upperState = state.toUpperCase();
+            // Validate state name
+            ValidationError e = Validator.state(upperState, states);
+            if (e != null) {
+                out("Warning: " + e.message());
+            } else {
+                states.add(upperState);
+                version++;
+                // Set first state as initial if none exists
+                if (initialState == null) {
+                    initialState = upperState;
+                    out("Initial state automatically set to '" + upperState + "'");
+                }
+            }
+        }
+    }
+
+    /*
+     Handles INITIAL-STATE command - sets the initial state
+     Array containing single state name*/
+
+    private synchronized void handleInitialState(String[] stateNames) {
+        // Validate input
+        if (stateNames.length != 1) {
+            out("Warning: INITIAL-STATE must be followed by exactly one state name");
+            return;
+        }
+
+        // Add state if not exists
+        String state = stateNames[0].toUpperCase();
+        if (!addUsedState(state, "initial state")) return;
+
+        // Set initial state
+        initialState = state;
+        version++;
+    }
+
+    /*
+     Handles FINAL-STATES command - manages accepting states
+     Array of state names to mark as final*/
+
+    private synchronized void handleFinalStates(String[] stateNames) {
+        // Validate input
+        if (stateNames.length == 0) {
+            out("Warning: FINAL-STATES command requires at least one state name");
+            return;
+        }
+
+        // Process each state
+        for (String state : stateNames) {
+            // Add state if not exists
+            String upperState = state.toUpperCase();
+            if (!addUsedState(upperState, "final state")) continue;
+
+            // Add to final states if not already; a state that was final changes nothing
+            if (finalStates.add(upperState)) {
+                version++;
+            } else {
+                out("Warning: state '" + state + "' is already final state");
+            }
+        }
+    }
+
+    /*
+     Handles single TRANSITION command
+     Tokens of [TRANSITION, fromState, symbol, toState]*/
+
+    private synchronized void handleTransition(CommandTokenizer t) {
+        // Validate input
+        if (t.count() != 4) {
+            out("Warning: TRANSITION requires 3 arguments (fromState symbol toState)");
+            return;
+        }
+
+        // Extract and normalize transition components, interned so known names cost nothing
+        String from = t.upper(1);
+        String symbol = t.upper(2);
+        String to = t.upper(3);
+
+        // Rejected before anything is added, so a refused move leaves the model unchanged
+        Map<String, String> row = transitions.get(from);
+        String current = row == null ? null : row.get(symbol);
+        boolean epsilon = symbol.equals(CompiledFSM.EPSILON_NAME);
+        ValidationError e = epsilon ? Validator.move(from, symbol, to, current, nfaMode) : null;
+        if (e == null && !states.contains(from)) e = Validator.state(from, states);
+        if (e == null && !states.contains(to) && !to.equals(from)) e = Validator.state(to, states);
+        if (e == null && !epsilon && !symbols.contains(symbol)) e = Validator.symbol(symbol, symbols);
+        if (e != null) {
+            out("Warning: " + e.message());
+            return;
+        }
+
+        // Handle missing states/symbols
+        addUsedState(from, "source state");
+        addUsedState(to, "destination state");
+        if (!epsilon && !symbols.contains(symbol)) {
+            out("Warning: " + Validator.knownSymbol(symbol, symbols).message() + ", added automatically");
+            symbols.add(symbol);
+        }
+
+        // Initialize transition map if needed
+        if (row == null) {
+            row = new LinkedHashMap<>();
+            transitions.put(from, row);
+        }
+
+        // In NFA mode a second target or an epsilon move is kept next to the first one
+        if (nfaMode && Validator.nfaMove(symbol, current, to)) {
+            if (!addNfaMove(from, symbol, to)) {
+                out("Warning: transition from '" + from + "' with symbol '" + symbol + "' to '" + to + "' already exists");
+            }
+            version++;
+            return;
+        }
+
+        // Handle duplicate transitions
+        if (current != null) {
+            out("Warning: transition from '" + from + "' with symbol '" + symbol + "' already exists, overwritten");
+        }
+
+        // Add the transition
+        putTransition(from, row, symbol, to);
+        version++;
+    }
+
+    /*
+     Adds a state that is used before it was declared, as the REPL does for the
+     given role ("initial state", "source state", ...). false if the name is invalid.*/
+    private boolean addUsedState(String state, String role) {
+        if (states.contains(state)) return true;
+        ValidationError e = Validator.state(state, states);
+        if (e != null) {
+            out("Warning: " + e.message());
+            return false;
+        }
+        out("Warning: " + Validator.knownState(state, states, role).message() + ", added automatically");
+        states.add(state);
+        return true;
+    }
+
+    /*
+     Handles multiple TRANSITIONS command
+     Tokens of the command, the rest of the line holds comma-separated transitions*/
+
+    private synchronized void handleTransitions(CommandTokenizer t) {
+        int end = t.lineLength();
+        int pos = t.count() > 1 ? t.start(1) : end;
+
+        // One pass over the line: entries end at a comma, fields are separated by whitespace
+        boolean hasComma = false;
+        while (true) {
+            int entryEnd = pos;
+            while (entryEnd < end && t.upperAt(entryEnd) != ',') entryEnd++;
+            if (entryEnd < end) hasComma = true;
+
+            int fields = 0;
+            int i = pos;
+            while (i < entryEnd) {
+                if (CommandTokenizer.isSpace(t.upperAt(i))) {
+                    i++;
+                    continue;
+                }
+                int fieldStart = i;
+                while (i < entryEnd && !CommandTokenizer.isSpace(t.upperAt(i))) i++;
+                if (fields < 3) {
+                    entryFields[2 * fields] = fieldStart;
+                    entryFields[2 * fields + 1] = i;
+                }
+                fields++;
+            }
+
+            // Like split(","), empty entries at the end of a comma-separated list are ignored
+            boolean trailing = fields == 0 && hasComma && onlyCommas(t, pos, end);
+            if (fields == 3) {
+                addTransitionsEntry(t.intern(entryFields[0], entryFields[1]),
+                        t.intern(entryFields[2], entryFields[3]), t.intern(entryFields[4], entryFields[5]));
+            } else if (!trailing) {
+                out("Error: TRANSITIONS entries must be '<symbol> <from> <to>'");
+            }
+
+            if (entryEnd >= end) break;
+            pos = entryEnd + 1;
+        }
+    }
+
+    private static boolean onlyCommas(CommandTokenizer t, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (t.upperAt(i) != ',' && !CommandTokenizer.isSpace(t.upperAt(i))) return false;
+        }
+        return true;
+    }
+
+    /*
+     Starts a TRANSITIONS block that is applied while it is read (script mode).
+     The text after the command word arrives in pieces through feedTransitions
+     and every complete entry is added right away; endTransitions ends the block.
+     Errors are the same as for the block in one line.*/
+    synchronized void beginTransitions() {
+        AsyncLogger log = logger;
+        if (log != null) log.log(AsyncLogger.COMMAND, "TRANSITIONS (streamed from script)");
+        journalRecord(Journal.BEGIN, "");
+        if (pendingModel != null) materialize();
+        streamEntry.setLength(0);
+        streamEmpty = 0;
+        streamComma = false;
+        streamStarted = System.nanoTime();
+    }
+
+    synchronized void feedTransitions(CharSequence text) {
+        journalRecord(Journal.FEED, text);
+        for (int i = 0, n = text.length(); i < n; i++) {
+            char c = text.charAt(i);
+            if (c == ',') streamedEntry(false);
+            else streamEntry.append(c);
+        }
+    }
+
+    synchronized void endTransitions() {
+        streamedEntry(true);
+        streamEmpty = 0;
+        streamEntry.setLength(0);
+        Stats st = stats;
+        if (st != null) st.command("TRANSITIONS", System.nanoTime() - streamStarted);
+        journalRecord(Journal.END, "");
+        Journal j = journal;
+        if (j != null) snapshotIfFull(j);
+    }
+
+    // Appends a record of a streamed block to the journal, if there is one
+    private void journalRecord(byte kind, CharSequence text) {
+        Journal j = journal;
+        if (j == null) return;
+        try {
+            j.append(kind, text);
+        } catch (UncheckedIOException e) {
+            stopJournal("Error: journal stopped: " + e.getMessage());
+        }
+    }
+
+    // One entry of a streamed block, last is the entry after the final comma
+    private void streamedEntry(boolean last) {
+        CommandTokenizer t = tokens;
+        t.reset(streamEntry);
+        streamEntry.setLength(0);
+        if (t.count() == 0) {
+            // Like split(","), empty entries are only errors when an entry follows them
+            if (!last) {
+                streamComma = true;
+                streamEmpty++;
+            } else if (!streamComma) {
+                out("Error: TRANSITIONS entries must be '<symbol> <from> <to>'");
+            }
+            return;
+        }
+        if (!last) streamComma = true;
+        for (; streamEmpty > 0; streamEmpty--) out("Error: TRANSITIONS entries must be '<symbol> <from> <to>'");
+        if (t.count() == 3) {
+            addTransitionsEntry(t.upper(0), t.upper(1), t.upper(2));
+        } else {
+            out("Error: TRANSITIONS entries must be '<symbol> <from> <to>'");
+        }
+    }
+
+    /*
+     Adds one '<symbol> <from> <to>' entry of a TRANSITIONS block*/
+    private void addTransitionsEntry(String sym, String from, String to) {
+        // Validate components
+        ValidationError e = Validator.knownSymbol(sym, symbols);
+        if (e == null) e = Validator.knownState(from, states, "source state");
+        if (e == null) e = Validator.knownState(to, states, "destination state");
+        Map<String, String> row = transitions.get(from);
+        String current = row == null ? null : row.get(sym);
+        if (e == null && sym.equals(CompiledFSM.EPSILON_NAME)) e = Validator.move(from, sym, to, current, nfaMode);
+        if (e != null) {
+            out("Error: " + e.message());
+            return;
+        }
+
+        // Add the transition, next to an existing one in NFA mode
+        if (row == null) {
+            row = new LinkedHashMap<>();
+            transitions.put(from, row);
+        }
+        if (nfaMode && Validator.nfaMove(sym, current, to)) {
+            addNfaMove(from, sym, to);
+        } else {
+            putTransition(from, row, sym, to);
+        }
+        version++;
+    }
+
+    /*
+     Clears the entire FSM definition
+     */
+    public synchronized void handleClear() {
+        symbols.clear();
+        states.clear();
+        initialState = null;
+        finalStates.clear();
+        transitions.clear();
+        nfaTransitions.clear();
+        incoming.clear();
+        version++;
+        out("FSM cleared");
+    }
+
+    /*
+     Handles DELETE command - removes states or symbols
+     Array containing [type, name], or [STATES, name...] to delete several states*/
+    private synchronized void handleDelete(String[] parts) {
+        // Validate input
+        if (parts.length < 2) {
+            out("Warning: DELETE command requires type and name");
+            return;
+        }
+
+        // Extract components
+        String type = parts[0].toUpperCase();
+        String name = parts[1].toUpperCase();
+
+        // Process deletion by type
+        switch (type) {
+            case "STATE":
+                if (deleteState(name)) {
+                    version++;
+                    out("State '" + name + "' deleted.");
+                } else {
+                    out("Warning: state '" + name + "' not found.");
+                }
+                break;
+
+            case "STATES":
+                // Bulk delete, every state costs only its own transitions
+                boolean deleted = false;
+                for (int i = 1; i < parts.length; i++) {
+                    String state = parts[i].toUpperCase();
+                    if (deleteState(state)) {
+                        deleted = true;
+                        out("State '" + state + "' deleted.");
+                    } else {
+                        out("Warning: state '" + state + "' not found.");
+                    }
+                }
+                if (deleted) version++;
+                break;
+
+            case "SYMBOL":
+                if (symbols.remove(name)) {
+                    // Remove all transitions using this symbol, one lookup per state
+                    for (Map.Entry<String, Map<String, String>> row : transitions.entrySet()) {
+                        String to = row.getValue().remove(name);
+                        if (to != null) unlink(to, row.getKey(), name);
+                    }
+                    for (Map.Entry<String, Map<String, Set<String>>> row : nfaTransitions.entrySet()) {
+                        Set<String> targets = row.getValue().remove(name);
+                        if (targets != null) {
+                            for (String to : targets) unlink(to, row.getKey(), name);
+                        }
+                    }
+                    version++;
+                    out("Symbol '" + name + "' deleted.");
+                } else {
+                    out("Warning: symbol '" + name + "' not found.");
+                }
+                break;
+
+            default:
+                out("Warning: unknown DELETE type '" + type + "'");
+        }
+    }
+
+    /*
+     Removes a state with its outgoing and incoming transitions. The incoming ones
+     come from the reverse index, so the cost is the degree of the state, not the
+     size of the FSM. The caller bumps the version.*/
+    private boolean deleteState(String name) {
+        if (!states.remove(name)) return false;
+        // Clean up related state references
+        if (name.equals(initialState)) initialState = null;
+        finalStates.remove(name);
+
+        // Outgoing transitions leave the index of their targets
+        Map<String, String> row = transitions.remove(name);
+        if (row != null) {
+            for (Map.Entry<String, String> move : row.entrySet()) unlink(move.getValue(), name, move.getKey());
+        }
+        Map<String, Set<String>> moves = nfaTransitions.remove(name);
+        if (moves != null) {
+            for (Map.Entry<String, Set<String>> move : moves.entrySet()) {
+                for (String to : move.getValue()) unlink(to, name, move.getKey());
+            }
+        }
+
+        // Incoming transitions
+        Set<Edge> in = incoming.remove(name);
+        if (in != null) {
+            for (Edge edge : in) {
+                Map<String, String> source = transitions.get(edge.from);
+                if (source != null && name.equals(source.get(edge.symbol))) source.remove(edge.symbol);
+                Map<String, Set<String>> extra = nfaTransitions.get(edge.from);
+                Set<String> targets = extra == null ? null : extra.get(edge.symbol);
+                if (targets != null && targets.remove(name) && targets.isEmpty()) extra.remove(edge.symbol);
+            }
+        }
+        return true;
+    }
+
+    /*
+     Sets the deterministic target of (from, symbol) and keeps the reverse index in step*/
+    private void putTransition(String from, Map<String, String> row, String symbol, String to) {
+        String old = row.put(symbol, to);
+        if (to.equals(old)) return;
+        if (old != null) unlink(old, from, symbol);
+        incoming.computeIfAbsent(to, k -> new HashSet<>()).add(new Edge(from, symbol));
+    }
+
+    /*
+     Drops (from, symbol) from the index of target, unless a transition or an NFA
+     move on that pair still leads there*/
+    private void unlink(String target, String from, String symbol) {
+        Map<String, String> row = transitions.get(from);
+        if (row != null && target.equals(row.get(symbol))) return;
+        Map<String, Set<String>> moves = nfaTransitions.get(from);
+        Set<String> targets = moves == null ? null : moves.get(symbol);
+        if (targets != null && targets.contains(target)) return;
+        Set<Edge> in = incoming.get(target);
+        if (in != null && in.remove(new Edge(from, symbol)) && in.isEmpty()) incoming.remove(target);
+    }
+
+    // A (source, symbol) pair of the reverse index
+    private static final class Edge {
+        final String from;
+        final String symbol;
+
+        Edge(String from, String symbol) {
+            this.from = from;
+            this.symbol = symbol;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Edge && from.equals(((Edge) o).from) && symbol.equals(((Edge) o).symbol);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * from.hashCode() + symbol.hashCode();
+        }
+    }
+
+    /*
+     Prints the current FSM definition
+     */
+    private synchronized void handlePrint(String[] parts) {
+        long skip = 0;
+        long limit = Long.MAX_VALUE;
+        if (parts.length > 0) {
+            // PRINT LIMIT n [PAGE p] shows items p*n+1 .. p*n+n of the states and of the transitions
+            try {
+                if ((parts.length != 2 && parts.length != 4) || !parts[0].equalsIgnoreCase("LIMIT")
+                        || (parts.length == 4 && !parts[2].equalsIgnoreCase("PAGE"))) {
+                    throw new NumberFormatException();
+                }
+                limit = Long.parseLong(parts[1]);
+                long page = parts.length == 4 ? Long.parseLong(parts[3]) : 0;
+                if (limit < 1 || page < 0) throw new NumberFormatException();
+                skip = page > Long.MAX_VALUE / limit ? Long.MAX_VALUE : page * limit;
+            } catch (NumberFormatException e) {
+                out("Warning: PRINT takes no arguments or LIMIT n [PAGE p]");
+                return;
+            }
+        }
+        long end = skip + limit < skip ? Long.MAX_VALUE : skip + limit;
+        OutputSink o = sink;
+
+        // Print states with their properties
+        o.line("States:");
+        long index = 0;
+        for (String s : states) {
+            if (index >= end) break;
+            if (index++ >= skip) stateInfo(o.append(" - "), s).line();
+        }
+        if (parts.length > 0) shown(skip, end, states.size(), "states");
+
+        // Print symbol alphabet
+        o.line("Symbols:");
+        join(o.append(" - "), symbols).line();
+
+        // Print all transitions, streamed from the maps without building strings
+        o.line("Transitions:");
+        index = 0;
+        long total = 0;
+        for (Map.Entry<String, Map<String, String>> row : transitions.entrySet()) {
+            total += row.getValue().size();
+            String from = row.getKey();
+            for (Map.Entry<String, String> move : row.getValue().entrySet()) {
+                if (index >= end) break;
+                if (index++ >= skip) transition(o, from, move.getKey(), move.getValue());
+            }
+        }
+        // NFA mode extras
+        for (Map.Entry<String, Map<String, Set<String>>> row : nfaTransitions.entrySet()) {
+            String from = row.getKey();
+            for (Map.Entry<String, Set<String>> moves : row.getValue().entrySet()) {
+                total += moves.getValue().size();
+                for (String to : moves.getValue()) {
+                    if (index >= end) break;
+                    if (index++ >= skip) transition(o, from, moves.getKey(), to);
+                }
+            }
+        }
+        if (parts.length > 0) shown(skip, end, total, "transitions");
+    }
+
+    // " (showing 11-20 of 500 states)" after a section printed with LIMIT
+    private void shown(long skip, long end, long total, String what) {
+        if (skip >= total) {
+            sink.append(" (none of ").append(total).append(' ').append(what).append(" on this page)").line();
+        } else if (skip > 0 || end < total) {
+            sink.append(" (showing ").append(skip + 1).append('-').append(Math.min(end, total))
+                    .append(" of ").append(total).append(' ').append(what).append(')').line();
+        }
+    }
+
+    private void transition(OutputSink o, String from, String symbol, String to) {
+        o.append(" - ").append(from).append(" -").append(symbol).append("-> ").append(to).line();
+    }
+
+    // State name with its (initial) and (final) marks, the line is left open
+    private OutputSink stateInfo(String s) {
+        return stateInfo(sink, s);
+    }
+
+    private OutputSink stateInfo(OutputSink o, String s) {
+        o.append(s);
+        if (s.equals(initialState)) o.append(" (initial)"); //mark the inital state
+        if (finalStates.contains(s)) o.append(" (final)"); //mark the final state
+        return o;
+    }
+
+    // Symbols separated by ", ", the line is left open
+    private OutputSink join(Iterable<String> items) {
+        return join(sink, items);
+    }
+
+    private OutputSink join(OutputSink o, Iterable<String> items) {
+        boolean first = true;
+        for (String item : items) {
+            if (!first) o.append(", ");
+            o.append(item);
+            first = false;
+        }
+        return o;
+    }
+
+    /*
+     Returns the immutable snapshot of the current FSM version, rebuilding and
+     publishing it when it is stale. Only for the thread that edits the FSM, which
+     is also the only one changing the model, so the rebuild needs no lock.*/
+    CompiledFSM snapshot() {
+        CompiledFSM s = snapshot;
+        long v = version;
+        if (s == null || s.version != v) {
+            s = CompiledFSM.build(v, symbols, states, initialState, finalStates, transitions, nfaTransitions);
+            snapshot = s;
+        }
+        return s;
+    }
+
+    /*
+     Returns the last published snapshot, for any other thread. Never locks and never
+     waits for an edit in progress; when the FSM has changed since, the editing thread
+     publishes the new version after its current command.*/
+    CompiledFSM published() {
+        CompiledFSM s = snapshot;
+        if (s == null || s.version != version) publishRequested = true;
+        return s;
+    }
+
+    // Publishes the current version when a reader asked for it, outside the edit lock
+    void publishIfRequested() {
+        if (publishRequested) {
+            publishRequested = false;
+            snapshot();
+        }
+    }
+
+    /*
+     Executes the FSM on an input string
+     Tokens of [EXECUTE, input]*/
+
+    private void handleExecute(CommandTokenizer t) {
+        // Validate input
+        if (t.count() != 2) {
+            out("Error: EXECUTE requires exactly one input string");
+            return;
+        }
+        CharSequence input = t.view(1); // upper-cased view, no copy
+
+        try {
+            // Validate input format
+            for (int i = 0; i < input.length(); i++) {
+                if (CompiledFSM.symbolIndex(input.charAt(i)) < 0) {
+                    out("Error: input must be alphanumeric (A–Z, 0–9 only)");
+                    return;
+                }
+            }
+
+            CompiledFSM fsm = snapshot();
+            // Check initial state exists
+            if (fsm.initialState() == CompiledFSM.NONE) {
+                out("Error: no initial state defined");
+                return;
+            }
+
+            // Validate all symbols in input
+            for (int i = 0; i < input.length(); i++) {
+                if (!fsm.declared[CompiledFSM.symbolIndex(input.charAt(i))]) {
+                    out("Error: symbol '" + input.charAt(i) + "' not recognized");
+                    return;
+                }
+            }
+
+            Stats st = stats;
+            // A nondeterministic FSM has no single path, only the result is printed
+            if (!fsm.isDeterministic()) {
+                boolean accepted = dfaFor(fsm).accepts(input);
+                if (st != null) st.result(accepted);
+                out(accepted ? "YES" : "NO");
+                return;
+            }
+
+            // Simulate FSM execution on the table, no path kept
+            if (st != null) st.execute(fsm, input);
+            int end = fsm.run(input);
+            if (end == CompiledFSM.NONE) {
+                // Undefined transition
+                if (st != null) st.result(false);
+                out("NO");
+                return;
+            }
+
+            // Output state sequence, replayed only once the run reached the end of the input
+            OutputSink o = sink.append(fsm.stateName(fsm.initialState()));
+            int current = fsm.initialState();
+            for (int i = 0; i < input.length(); i++) {
+                current = fsm.next(current, input.charAt(i));
+                o.append(' ').append(fsm.stateName(current));
+            }
+            o.line();
+
+            // Output acceptance result
+            boolean accepted = fsm.isFinal(end);
+            if (st != null) st.result(accepted);
+            out(accepted ? "YES" : "NO");
+
+        } catch (Exception e) {
+            out("Error: unexpected exception during EXECUTE – " + e.getMessage());
+        }
+    }
+
+    /*
+     Executes the FSM on a token stream, symbol names of any length separated by
+     commas or spaces
+     Tokens of [EXECUTE-TOKENS, token...]*/
+
+    private void handleExecuteTokens(CommandTokenizer t) {
+        if (t.count() < 2) {
+            out("Error: EXECUTE-TOKENS requires at least one symbol");
+            return;
+        }
+        CompiledFSM fsm = snapshot();
+        if (!fsm.isDeterministic()) {
+            out("Error: EXECUTE-TOKENS requires a deterministic FSM");
+            return;
+        }
+        if (fsm.initialState() == CompiledFSM.NONE) {
+            out("Error: no initial state defined");
+            return;
+        }
+
+        // Resolve all tokens first, so an unknown one is reported before any output
+        int count = 0;
+        int[] ids = tokenIds;
+        for (int i = 1; i < t.count(); i++) {
+            CharSequence word = t.view(i); // upper-cased view, no copy
+            int end = 0;
+            while (end < word.length()) {
+                int from = end;
+                while (end < word.length() && word.charAt(end) != ',') end++;
+                if (end > from) {
+                    int id = fsm.symbolId(word, from, end);
+                    if (id == CompiledFSM.NONE) {
+                        out("Error: symbol '" + word.subSequence(from, end) + "' not recognized");
+                        return;
+                    }
+                    if (count == ids.length) tokenIds = ids = Arrays.copyOf(ids, count * 2);
+                    ids[count++] = id;
+                }
+                end++; // past the comma
+            }
+        }
+
+        Stats st = stats;
+        int end = fsm.initialState();
+        for (int i = 0; i < count && end != CompiledFSM.NONE; i++) end = fsm.nextToken(end, ids[i]);
+        if (end == CompiledFSM.NONE) {
+            // Undefined transition
+            if (st != null) st.result(false);
+            out("NO");
+            return;
+        }
+
+        // Output state sequence, replayed only once the run reached the end of the input
+        int current = fsm.initialState();
+        OutputSink o = sink.append(fsm.stateName(current));
+        for (int i = 0; i < count; i++) {
+            current = fsm.nextToken(current, ids[i]);
+            o.append(' ').append(fsm.stateName(current));
+        }
+        o.line();
+
+        boolean accepted = fsm.isFinal(end);
+        if (st != null) st.result(accepted);
+        out(accepted ? "YES" : "NO");
+    }
+
+    /*
+     Handles SESSION command - executes one input that is given in pieces
+     START [OFF | LAST n | FULL] starts on the current FSM and chooses how much of
+     the path is kept, FEED chunk... runs the next pieces, STATE shows where the
+     run is and END prints the result like EXECUTE*/
+    private void handleSession(CommandTokenizer t) {
+        String option = t.count() < 2 ? "" : t.upper(1);
+        ExecutionSession s = session;
+        switch (option) {
+            case "START":
+                ExecutionSession.PathMode mode = ExecutionSession.PathMode.OFF;
+                int last = 0;
+                String path = t.count() > 2 ? t.upper(2) : "OFF";
+                try {
+                    mode = ExecutionSession.PathMode.valueOf(path);
+                    if (t.count() != (mode == ExecutionSession.PathMode.LAST ? 4 : t.count() > 2 ? 3 : 2)) {
+                        throw new IllegalArgumentException();
+                    }
+                    if (mode == ExecutionSession.PathMode.LAST) {
+                        last = Integer.parseInt(t.raw(3));
+                        if (last < 1) throw new IllegalArgumentException();
+                    }
+                } catch (IllegalArgumentException e) {
+                    out("Warning: SESSION START takes OFF, LAST n or FULL");
+                    return;
+                }
+                s = new ExecutionSession(snapshot(), dfaCacheStates, mode, last);
+                if (s.error() != null) {
+                    out(s.error());
+                    return;
+                }
+                if (session != null) out("Warning: unfinished session discarded");
+                session = s;
+                out("Session started" + (s.isDeterministic() ? "" : " (NFA, no path)"));
+                break;
+            case "FEED":
+                if (s == null) {
+                    out("Warning: no session, use SESSION START");
+                    return;
+                }
+                for (int i = 2; i < t.count() && s.error() == null; i++) {
+                    if (!s.feed(t.view(i))) out(s.error());
+                }
+                break;
+            case "STATE":
+                if (s == null) {
+                    out("Warning: no session, use SESSION START");
+                    return;
+                }
+                OutputSink o = sink.append(s.consumed()).append(" symbols read, ");
+                if (s.error() != null) o.append("stopped by an error");
+                else if (s.state() == CompiledFSM.NONE) o.append("no transition, the input is rejected");
+                else if (!s.isDeterministic()) o.append(s.accepting() ? "accepting" : "not accepting");
+                else stateInfo(o.append("state "), s.fsm.stateName(s.state()));
+                o.line();
+                break;
+            case "END":
+                if (s == null) {
+                    out("Warning: no session, use SESSION START");
+                    return;
+                }
+                session = null;
+                boolean accepted = s.finish();
+                if (s.error() != null) {
+                    out(s.error());
+                    return;
+                }
+                Stats st = stats;
+                if (st != null) st.result(accepted);
+                // The path is printed like EXECUTE does, only for a run that reached the end of the input
+                if (s.state() != CompiledFSM.NONE && s.pathMode() != ExecutionSession.PathMode.OFF) {
+                    OutputSink line = s.truncated() ? sink.append("... ") : sink;
+                    int[] states = s.path();
+                    for (int i = 0; i < states.length; i++) {
+                        if (i > 0) line.append(' ');
+                        line.append(s.fsm.stateName(states[i]));
+                    }
+                    line.line();
+                }
+                out(accepted ? "YES" : "NO");
+                break;
+            default:
+                out("Warning: SESSION takes START, FEED, STATE or END");
+        }
+    }
+
+    /*
+     Adds a nondeterministic target or an epsilon move, false if it already exists*/
+    private boolean addNfaMove(String from, String symbol, String to) {
+        if (!nfaTransitions.computeIfAbsent(from, k -> new LinkedHashMap<>())
+                .computeIfAbsent(symbol, k -> new LinkedHashSet<>()).add(to)) {
+            return false;
+        }
+        incoming.computeIfAbsent(to, k -> new HashSet<>()).add(new Edge(from, symbol));
+        return true;
+    }
+
+    /*
+     Returns the REPL's lazy DFA for a nondeterministic snapshot, new when the snapshot changed*/
+    private LazyDFA dfaFor(CompiledFSM fsm) {
+        if (lazyDfa == null || lazyDfa.fsm != fsm) {
+            lazyDfa = new LazyDFA(fsm, dfaCacheStates);
+        }
+        return lazyDfa;
+    }
+
+    /*
+     Handles NFA command - switches NFA mode and sizes the DFA cache
+     Array containing ON, OFF or CACHE <states> (empty for status)*/
+    private synchronized void handleNfa(String[] parts) {
+        if (parts.length == 0) {
+            out("NFA mode " + (nfaMode ? "ON" : "OFF") + ", DFA cache " + dfaCacheStates + " states"
+                    + (lazyDfa != null ? " (" + lazyDfa.cachedStates() + " built, " + lazyDfa.flushes + " flushes)" : ""));
+            return;
+        }
+
+        switch (parts[0].toUpperCase()) {
+            case "ON":
+                nfaMode = true;
+                out("NFA mode ON");
+                break;
+            case "OFF":
+                if (!nfaTransitions.isEmpty()) {
+                    out("Warning: FSM still has nondeterministic transitions, delete them first");
+                    return;
+                }
+                nfaMode = false;
+                out("NFA mode OFF");
+                break;
+            case "CACHE":
+                try {
+                    int size = parts.length == 2 ? Integer.parseInt(parts[1]) : -1;
+                    if (size < 2) {
+                        out("Warning: NFA CACHE requires a number of states of at least 2");
+                        return;
+                    }
+                    dfaCacheStates = size;
+                    lazyDfa = null;
+                    out("DFA cache set to " + size + " states");
+                } catch (NumberFormatException e) {
+                    out("Warning: invalid cache size '" + parts[1] + "'");
+                }
+                break;
+            default:
+                out("Warning: unknown NFA option '" + parts[0] + "'");
+        }
+    }
+
+    /*
+     Handles MINIMIZE command - replaces the FSM with the minimal equivalent DFA
+     after dropping unreachable and dead states*/
+    private synchronized void handleMinimize() {
+        if (!snapshot().isDeterministic()) {
+            out("Error: MINIMIZE requires a deterministic FSM");
+            return;
+        }
+        Minimizer.Result result = Minimizer.minimize(snapshot(), version + 1);
+        install(result.fsm);
+        if (result.droppedExtra > 0) {
+            out("Warning: " + result.droppedExtra + " transitions on multi-character symbols dropped");
+        }
+        out("FSM minimized: " + result.before + " states -> " + result.after + " states ("
+                + result.unreachable + " unreachable, " + result.dead + " dead removed)");
+    }
+
+    /*
+     Handles INTERSECT and UNION commands - replaces the FSM with its product with a compiled file
+     Array containing filename*/
+    private synchronized void handleProduct(String command, String[] parts) {
+        CompiledFSM other = operand(command, parts);
+        if (other == null) return;
+        Product.Result result = Product.combine(snapshot(), other,
+                command.equals("INTERSECT") ? Product.Op.INTERSECT : Product.Op.UNION, version + 1);
+        install(result.fsm);
+        if (result.droppedExtra > 0) {
+            out("Warning: " + result.droppedExtra + " transitions on multi-character symbols dropped");
+        }
+        out("FSM " + (command.equals("INTERSECT") ? "intersected" : "united") + " with " + parts[0]
+                + ": " + result.states + " states");
+    }
+
+    /*
+     Handles COMPLEMENT command - replaces the FSM with one accepting exactly the
+     inputs over the declared symbols it rejected*/
+    private synchronized void handleComplement(String[] parts) {
+        if (parts.length != 0) {
+            out("Warning: COMPLEMENT takes no arguments");
+            return;
+        }
+        if (!snapshot().isDeterministic()) {
+            out("Error: COMPLEMENT requires a deterministic FSM");
+            return;
+        }
+        Product.Result result = Product.combine(snapshot(), null, Product.Op.COMPLEMENT, version + 1);
+        install(result.fsm);
+        if (result.droppedExtra > 0) {
+            out("Warning: " + result.droppedExtra + " transitions on multi-character symbols dropped");
+        }
+        out("FSM complemented: " + result.states + " states");
+    }
+
+    /*
+     Handles EQUIVALENT and INCLUDED commands - compares the FSM with a compiled file
+     and prints a shortest input they disagree on
+     Array containing filename*/
+    private void handleCompare(String command, String[] parts) {
+        CompiledFSM other = operand(command, parts);
+        if (other == null) return;
+        Product.Difference d = Product.compare(snapshot(), other, command.equals("INCLUDED"));
+        if (d.equal) {
+            out("YES");
+            return;
+        }
+        out("NO");
+        String input = d.counterexample.isEmpty() ? "the empty input" : "'" + d.counterexample + "'";
+        out("Counterexample: " + input + " is accepted by "
+                + (d.acceptedByFirst ? "the current FSM" : parts[0]) + " only");
+    }
+
+    /*
+     Handles ANALYZE command - reports reachability, components, missing
+     transitions and sink states of the FSM*/
+    private void handleAnalyze(String[] parts) {
+        if (parts.length != 0) {
+            out("Warning: ANALYZE takes no arguments");
+            return;
+        }
+        new Analysis(snapshot()).report(sink);
+    }
+
+    /*
+     Loads the compiled file a product command works with; null after printing
+     why when the file or the current FSM can not be used*/
+    private CompiledFSM operand(String command, String[] parts) {
+        if (parts.length != 1) {
+            out("Error: " + command + " requires a compiled FSM file");
+            return null;
+        }
+        if (!snapshot().isDeterministic()) {
+            out("Error: " + command + " requires a deterministic FSM");
+            return null;
+        }
+        CompiledFSM other;
+        try {
+            other = FSMFile.read(Paths.get(parts[0]), 0);
+        } catch (IOException e) {
+            err("Error: Unable to load FSM from file '" + parts[0] + "': " + e);
+            return null;
+        }
+        if (!other.isDeterministic()) {
+            out("Error: '" + parts[0] + "' is not a deterministic FSM");
+            return null;
+        }
+        return other;
+    }
+
+    /*
+     Handles EXECUTE-FILE command - runs every line of a file through the FSM
+     Array containing [inputFile, outputFile]*/
+    private void handleExecuteFile(String[] parts) {
+        // Validate input
+        if (parts.length != 2) {
+            out("Error: EXECUTE-FILE requires an input file and an output file");
+            return;
+        }
+
+        CompiledFSM fsm = snapshot();
+        if (fsm.initial == CompiledFSM.NONE) {
+            out("Error: no initial state defined");
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            BatchExecutor.Summary summary = BatchExecutor.run(fsm, dfaCacheStates, Paths.get(parts[0]), Paths.get(parts[1]));
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            Stats st = stats;
+            if (st != null) st.results(summary.accepted, summary.rejected());
+            out(summary.inputs + " inputs executed in " + millis + " ms: "
+                    + summary.accepted + " YES, " + summary.rejected() + " NO (results in " + parts[1] + ")");
+        } catch (IOException | UncheckedIOException e) {
+            out("Error: unable to execute file '" + parts[0] + "': " + e.getMessage());
+        }
+    }
+
+    /*
+     Handles EXECUTE-PARALLEL command - runs the whole file as one input, split
+     over the given number of threads (default: all cores)
+     Array containing [inputFile] or [inputFile, threads]*/
+    private void handleExecuteParallel(String[] parts) {
+        // Validate input
+        if (parts.length < 1 || parts.length > 2) {
+            out("Error: EXECUTE-PARALLEL requires an input file and optionally a thread count");
+            return;
+        }
+        int threads = parts.length == 2 ? threadCount(parts[1]) : Runtime.getRuntime().availableProcessors();
+        if (threads == 0) return;
+
+        CompiledFSM fsm = snapshot();
+        if (fsm.initial == CompiledFSM.NONE) {
+            out("Error: no initial state defined");
+            return;
+        }
+        if (!fsm.isDeterministic()) {
+            out("Error: EXECUTE-PARALLEL requires a deterministic FSM");
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            ParallelExecutor.Result r = ParallelExecutor.run(fsm, Paths.get(parts[0]), threads);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            out(r.symbols + " symbols executed in " + millis + " ms on " + threads + (threads == 1 ? " thread: " : " threads: ")
+                    + r.chunks + (r.chunks == 1 ? " chunk, " : " chunks, ") + r.sequential + " run sequentially");
+            if (r.end != CompiledFSM.NONE) out("Final state: " + fsm.stateName(r.end));
+
+            boolean accepted = r.end != CompiledFSM.NONE && fsm.isFinal(r.end);
+            Stats st = stats;
+            if (st != null) st.result(accepted);
+            out(accepted ? "YES" : "NO");
+        } catch (IOException | UncheckedIOException e) {
+            out("Error: unable to execute file '" + parts[0] + "': " + e.getMessage());
+        }
+    }
+
+    /*
+     Parses the thread count of EXECUTE-PARALLEL and SCAN, 0 after printing the error
+     when it is not a number between 1 and what a ForkJoinPool supports*/
+    private int threadCount(String arg) {
+        int threads;
+        try {
+            threads = Integer.parseInt(arg);
+        } catch (NumberFormatException e) {
+            threads = 0;
+        }
+        if (threads < 1 || threads > ParallelExecutor.MAX_THREADS) {
+            out("Error: thread count must be a number from 1 to " + ParallelExecutor.MAX_THREADS);
+            return 0;
+        }
+        return threads;
+    }
+
+    /*
+     Handles SCAN command - writes the end offset of every match of the FSM
+     inside the input file to the output file, using the given number of
+     threads (default: all cores)
+     Array containing [inputFile, outputFile] or [inputFile, outputFile, threads]*/
+    private void handleScan(String[] parts) {
+        // Validate input
+        if (parts.length < 2 || parts.length > 3) {
+            out("Error: SCAN requires an input file, an output file and optionally a thread count");
+            return;
+        }
+        int threads = parts.length == 3 ? threadCount(parts[2]) : Runtime.getRuntime().availableProcessors();
+        if (threads == 0) return;
+
+        CompiledFSM fsm = snapshot();
+        if (fsm.initial == CompiledFSM.NONE) {
+            out("Error: no initial state defined");
+            return;
+        }
+        // A file is scanned byte by byte, those transitions could never be taken
+        if (fsm.extra.length > 0) {
+            int count = fsm.extra.length / 3;
+            out("Error: SCAN only matches single-character symbols, the FSM has " + count
+                    + (count == 1 ? " transition" : " transitions") + " on multi-character symbols");
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            MatchScanner.Summary r = MatchScanner.scan(fsm, dfaCacheStates, Paths.get(parts[0]), Paths.get(parts[1]), threads);
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            out(r.matches + (r.matches == 1 ? " match" : " matches") + " in " + r.bytes + " bytes scanned in " + millis
+                    + " ms on " + threads + (threads == 1 ? " thread: " : " threads: ") + r.regions
+                    + (r.regions == 1 ? " region, " : " regions, ") + r.chained + " chained (results in " + parts[1] + ")");
+        } catch (IOException | UncheckedIOException e) {
+            out("Error: unable to scan file '" + parts[0] + "': " + e.getMessage());
+        }
+    }
+
+    /*
+     Handles GENERATE command - compiles the current FSM into a Java class and
+     optionally writes its source to a file. The class is timed against the table
+     first and only used when it is faster, or always with FORCE; it is then
+     published as a new snapshot of the same version, which EXECUTE, EXECUTE-FILE
+     and EXECUTE-PARALLEL run until the FSM changes. GENERATE OFF goes back to the table.
+     Array containing [FORCE] and an optional sourceFile, or [OFF]*/
+    private void handleGenerate(String[] parts) {
+        // OFF only on its own, FORCE only first; either word where the file name goes is refused
+        boolean off = parts.length == 1 && parts[0].equalsIgnoreCase("OFF");
+        boolean force = parts.length > 0 && parts[0].equalsIgnoreCase("FORCE");
+        String file = parts.length > (force ? 1 : 0) ? parts[parts.length - 1] : null;
+        if (parts.length > (force ? 2 : 1)) {
+            out("Warning: GENERATE takes OFF, or FORCE and at most one filename");
+            return;
+        }
+        if (!off && file != null && (file.equalsIgnoreCase("OFF") || file.equalsIgnoreCase("FORCE"))) {
+            out("Warning: " + file + " can not be combined with " + (force ? "FORCE" : "a filename")
+                    + " (write ./" + file + " for a file of that name)");
+            return;
+        }
+        CompiledFSM fsm = snapshot();
+        if (off) {
+            if (fsm.isGenerated()) snapshot = fsm.withRunner(null);
+            out("GENERATE OFF, execution uses the table");
+            return;
+        }
+        if (!fsm.isDeterministic()) {
+            out("Error: GENERATE requires a deterministic FSM");
+            return;
+        }
+        long size = CodeGenerator.estimate(fsm);
+        if (size > CodeGenerator.MAX_METHOD_BYTES) {
+            out("Error: FSM is too large to generate (about " + size + " bytes of bytecode, at most "
+                    + CodeGenerator.MAX_METHOD_BYTES + "), execution keeps using the table");
+            return;
+        }
+
+        long start = System.nanoTime();
+        String source = CodeGenerator.source(fsm);
+        CodeGenerator.Runner runner;
+        try {
+            runner = CodeGenerator.define(source);
+        } catch (IllegalStateException e) {
+            out("Error: unable to generate code: " + e.getMessage());
+            return;
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        out("Generated code for " + fsm.stateCount() + " states in " + millis + " ms");
+
+        // Mispredicted jumps make the code slower than the table on unpredictable input
+        if (!force) {
+            double[] ns = CodeGenerator.time(fsm, runner);
+            String times = String.format("%.2f ns per symbol, table %.2f", ns[1], ns[0]);
+            if (ns[1] * CodeGenerator.MIN_SPEEDUP < ns[0]) {
+                out("Generated code is faster than the table (" + times + ")");
+            } else {
+                out("Warning: generated code is not faster than the table (" + times
+                        + "), execution keeps using the table; GENERATE FORCE uses it anyway");
+                runner = null;
+            }
+        }
+        snapshot = fsm.withRunner(runner);
+
+        if (file != null) {
+            try {
+                Files.writeString(Paths.get(file), source);
+                out("Source written to " + file);
+            } catch (IOException e) {
+                out("Error: unable to write source to '" + file + "': " + e.getMessage());
+            }
+        }
+    }
+
+    /*
+     Handles STATS command - ON, OFF, RESET, EXPORT file, or no argument to print
+     the counters collected since STATS ON or the last RESET*/
+    private void handleStats(String[] parts) {
+        reportLogFailure();
+        String option = parts.length == 0 ? "" : parts[0].toUpperCase();
+        if (parts.length > (option.equals("EXPORT") ? 2 : 1)) {
+            out("Warning: STATS takes ON, OFF, RESET or EXPORT <file>");
+            return;
+        }
+        switch (option) {
+            case "ON":
+                if (stats == null) stats = new Stats(HANDLERS.keySet());
+                out("STATS ON");
+                break;
+            case "OFF":
+                stats = null;
+                out("STATS OFF");
+                break;
+            case "RESET":
+                if (stats != null) stats = new Stats(HANDLERS.keySet());
+                out("STATS reset");
+                break;
+            case "EXPORT":
+                if (parts.length != 2) {
+                    out("Warning: STATS EXPORT requires a filename");
+                } else if (stats == null) {
+                    out("Warning: STATS is OFF, nothing to export");
+                } else {
+                    try (OutputStream file = new FileOutputStream(parts[1])) {
+                        OutputSink o = new OutputSink(file);
+                        stats.report(o, true);
+                        o.flush();
+                        out("STATS exported to " + parts[1]);
+                    } catch (IOException | UncheckedIOException e) {
+                        out("Error: unable to export STATS to '" + parts[1] + "': " + e.getMessage());
+                    }
+                }
+                break;
+            case "":
+                if (stats == null) out("STATS is OFF");
+                else stats.report(sink, false);
+                break;
+            default:
+                out("Warning: unknown STATS option '" + parts[0] + "'");
+        }
+    }
+
+    /*
+      Handles LOG command - manages logging to file
+      Filename and optional BLOCK or DROP policy for a full buffer (empty to stop logging)*/
+    private void handleLog(String[] parts) {
+        reportLogFailure();
+        if (parts.length == 0) {
+            // Stop logging if active, everything queued so far is written first
+            AsyncLogger log = logger;
+            if (log != null) {
+                out("STOPPED LOGGING");
+                setLogger(null);
+                log.close();
+            } else {
+                out("LOGGING was not enabled");
+            }
+            return;
+        }
+        if (parts.length > 2) {
+            out("Warning: LOG requires a filename and optionally BLOCK or DROP");
+            return;
+        }
+
+        // Start new log file
+        String filename = parts[0];
+        AsyncLogger.FullPolicy policy = AsyncLogger.FullPolicy.BLOCK;
+        if (parts.length == 2) {
+            try {
+                policy = AsyncLogger.FullPolicy.valueOf(parts[1].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                out("Warning: unknown LOG policy '" + parts[1] + "' (BLOCK or DROP)");
+                return;
+            }
+        }
+        try {
+            // Close existing log if open
+            AsyncLogger old = logger;
+            if (old != null) {
+                setLogger(null);
+                old.close();
+            }
+            // Create new log file
+            setLogger(new AsyncLogger(Paths.get(filename), policy));
+            out("LOGGING to " + filename);
+        } catch (IOException e) {
+            out("Error Unable to create log file " + filename);
+        }
+    }
+
+    // Prints why the log writer stopped, once
+    private void reportLogFailure() {
+        AsyncLogger log = logger;
+        IOException e = log == null ? null : log.takeFailure();
+        if (e != null) {
+            out("Error: log writer stopped: " + e.getMessage() + ", records logged since are lost");
+        }
+    }
+
+    /*
+     Handles JOURNAL command - records every edit in a directory from now on,
+     after recovering the FSM from it when it holds a journal already
+     Directory name (empty to stop journaling)*/
+    private void handleJournal(String[] parts) {
+        if (journal != null) reportSnapshotFailure(journal);
+        if (parts.length == 0) {
+            if (journal != null) {
+                stopJournal("STOPPED JOURNAL");
+            } else {
+                out("JOURNAL was not enabled");
+            }
+            return;
+        }
+        if (parts.length > 1) {
+            out("Warning: JOURNAL requires exactly one directory");
+            return;
+        }
+        startJournal(parts[0]);
+    }
+
+    /*
+     Starts journaling to a directory (JOURNAL, --journal on the command line)*/
+    void startJournal(String dirname) {
+        if (journal != null) {
+            out("Warning: JOURNAL is already active in " + journal.dir());
+            return;
+        }
+        Path dir = Paths.get(dirname);
+        try {
+            if (Journal.exists(dir)) {
+                long start = System.nanoTime();
+                Journal.Recovery r = new Journal.Recovery();
+                journal = recoverJournal(dir, r);
+                long millis = (System.nanoTime() - start) / 1_000_000;
+                out("FSM recovered from " + (r.snapshotFile == null ? "" : r.snapshotFile + " and ")
+                        + r.records + " journal records in " + millis + " ms");
+                if (r.damaged != null) out("Warning: " + r.damaged + " was cut off after its last complete record");
+            } else {
+                Journal j = Journal.create(dir, snapshot());
+                for (String line : journalHeader()) j.append(Journal.COMMAND, line);
+                journal = j;
+            }
+            out("JOURNAL to " + dirname);
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            out("Error: unable to journal to '" + dirname + "': " + e.getMessage());
+        }
+    }
+
+    /*
+     Replaces the FSM with the state recorded in the journal directory. Output,
+     LOG and STATS are off while the records are replayed.*/
+    private synchronized Journal recoverJournal(Path dir, Journal.Recovery r) throws IOException {
+        OutputSink out = sink;
+        AsyncLogger log = logger;
+        Stats st = stats;
+        sink = new OutputSink(OutputStream.nullOutputStream());
+        logger = null;
+        stats = null;
+        try {
+            return Journal.recover(dir, version + 1, fsm -> {
+                nfaMode = false;
+                dfaCacheStates = CompiledFSM.DFA_CACHE_STATES;
+                lazyDfa = null;
+                if (fsm != null) {
+                    install(fsm);
+                } else {
+                    pendingModel = null;
+                    handleClear();
+                }
+            }, this::replay, r);
+        } finally {
+            sink = out;
+            logger = log;
+            stats = st;
+        }
+    }
+
+    // One journal record during recovery
+    private void replay(byte kind, String text) {
+        switch (kind) {
+            case Journal.COMMAND:
+                process(text);
+                break;
+            case Journal.BEGIN:
+                beginTransitions();
+                break;
+            case Journal.FEED:
+                feedTransitions(text);
+                break;
+            case Journal.END:
+                endTransitions();
+                break;
+            default:
+                // unknown kinds come from a newer version, they are skipped
+        }
+    }
+
+    // Closes the journal and reports why
+    private void stopJournal(String message) {
+        Journal j = journal;
+        journal = null;
+        try {
+            if (j != null) j.close();
+        } catch (UncheckedIOException e) {
+            // the failure is what stopped it, already reported
+        }
+        out(message);
+    }
+
+    /*
+     Waits until the edits so far are on disk when JOURNAL is active. The REPL
+     calls it before each prompt; scripts only at the end, so their edits are
+     committed in groups.*/
+    void commit() {
+        Journal j = journal;
+        if (j == null) return;
+        try {
+            j.sync();
+        } catch (UncheckedIOException e) {
+            stopJournal("Error: journal stopped: " + e.getMessage());
+        }
+    }
+
+    /*
+     Handles COMPILE command - saves FSM to binary file
+     Array containing filename*/
+    private synchronized void handleCompile(String[] parts) {
+        // Validate input
+        if (parts.length != 1) {
+            out("Warning COMPILE requires exactly one filename");
+            return;
+        }
+
+        // Write the compiled table in the FSMFile format
+        String filename = parts[0];
+        try {
+            FSMFile.write(snapshot(), Paths.get(filename));
+            out("FSM saved to file " + filename);
+        } catch (IOException e) {
+            out("Error Unable to save FSM to file '" + filename + "'");
+        }
+    }
+
+    /*
+    Handles LOAD command - loads FSM from file
+    Array containing filename*/
+
+    synchronized void handleLoad(String[] parts) {
+        // Validate input
+        if (parts.length != 1) {
+            out("Warning LOAD requires exactly one filename");
+            return;
+        }
+
+        String filename = parts[0];
+        try {
+            // Map the file and publish it as the current snapshot, the model follows lazily
+            install(FSMFile.read(Paths.get(filename), version + 1));
+            out("FSM loaded from file: " + filename);
+        } catch (IOException e) {
+            err("Error: Unable to load FSM from file '" + filename + "': " + e);
+        }
+    }
+
+    /*
+     Prints one line of output; the sink copies it to the log when LOG is active*/
+    private void out(String line) {
+        sink.line(line);
+    }
+
+    // Error messages that go to stderr, after the output buffered so far
+    private void err(String line) {
+        sink.flush();
+        System.err.println(line);
+        AsyncLogger log = logger;
+        if (log != null) log.log(AsyncLogger.OUTPUT, line);
+    }
+
+    // Starts or stops copying output lines to a log
+    private void setLogger(AsyncLogger log) {
+        logger = log;
+        sink.tee(log == null ? null : line -> log.log(AsyncLogger.OUTPUT, line));
+    }
+
+    /*
+     Prints a message of the REPL itself, logged like command output*/
+    void print(String line) {
+        out(line);
+    }
+
+    /*
+     Called on EXIT: flushes and closes the log*/
+    void close() {
+        if (journal != null) stopJournal("STOPPED JOURNAL");
+        sink.flush();
+        AsyncLogger log = logger;
+        setLogger(null);
+        if (log != null) log.close();
+    }
+
+    /*
+     Replaces the FSM with a machine built outside the model (LOAD, MINIMIZE) and
+     publishes it. The machine must carry version + 1.*/
+    private synchronized void install(CompiledFSM fsm) {
+        symbols = new LinkedHashSet<>();
+        states = new LinkedHashSet<>();
+        initialState = null;
+        finalStates = new LinkedHashSet<>();
+        transitions = new LinkedHashMap<>();
+        nfaTransitions = new LinkedHashMap<>();
+        incoming = new HashMap<>();
+        pendingModel = fsm;
+        snapshot = fsm;
+        version = fsm.version;
+    }
+
+    /*
+     Rebuilds the editable sets and maps from a LOADed machine, in state id and
+     symbol declaration order. Does not change the version, the model matches the snapshot.*/
+    private synchronized void materialize() {
+        CompiledFSM fsm = pendingModel;
+        if (fsm == null) return;
+        pendingModel = null;
+
+        symbols.addAll(Arrays.asList(fsm.symbolNames));
+        for (int id = 0; id < fsm.stateCount(); id++) {
+            states.add(fsm.stateName(id));
+            if (fsm.finals[id]) finalStates.add(fsm.stateName(id));
+        }
+        if (fsm.initial != CompiledFSM.NONE) initialState = fsm.stateName(fsm.initial);
+
+        for (int id = 0; id < fsm.stateCount(); id++) {
+            Map<String, String> row = null;
+            for (String sym : fsm.symbolNames) {
+                int index = sym.length() == 1 ? CompiledFSM.symbolIndex(sym.charAt(0)) : -1;
+                if (index < 0) continue;
+                int to = fsm.step(id, index);
+                if (to == CompiledFSM.NONE) continue;
+                if (row == null) row = transitions.computeIfAbsent(fsm.stateName(id), k -> new LinkedHashMap<>());
+                putTransition(fsm.stateName(id), row, sym, fsm.stateName(to));
+            }
+        }
+        for (int i = 0; i < fsm.extra.length; i += 3) {
+            String from = fsm.stateName(fsm.extra[i]);
+            putTransition(from, transitions.computeIfAbsent(from, k -> new LinkedHashMap<>()),
+                    fsm.symbolNames[fsm.extra[i + 1]], fsm.stateName(fsm.extra[i + 2]));
+        }
+        for (int i = 0; i < fsm.nfa.length; i += 3) {
+            int index = fsm.nfa[i + 1];
+            String sym = index == CompiledFSM.EPSILON ? CompiledFSM.EPSILON_NAME
+                    : String.valueOf((char) (index < 10 ? '0' + index : 'A' + index - 10));
+            addNfaMove(fsm.stateName(fsm.nfa[i]), sym, fsm.stateName(fsm.nfa[i + 2]));
+        }
+        if (fsm.nfa.length > 0) nfaMode = true;
+    }
+}
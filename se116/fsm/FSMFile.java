@@ -0,0 +1,207 @@
+package se116.fsm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+ Binary file format used by COMPILE and LOAD.
+ All sections holding ints come first so they stay 4-byte aligned and can be
+ copied out of the memory-mapped file in one bulk operation.
+
+   header       MAGIC, format version (short), alphabet size (short),
+                symbol count, state count, initial state id, extra count, nfa count
+   offsets      int[stateCount + 1], byte offsets of state names in the names blob
+   finals       int[(stateCount + 31) / 32], bitset of accepting states
+   table        int[stateCount * ALPHABET], target state id or -1
+   extra        int[3 * extraCount], (from, symbol position, to) of multi-character symbols
+   nfa          int[3 * nfaCount], (from, symbol index or epsilon, to) of NFA moves
+   symbols      per symbol: unsigned short length + UTF-8 bytes
+   names        UTF-8 bytes of all state names
+ Everything is little-endian. Version 1 files have no nfa count and no nfa section.*/
+final class FSMFile {
+    static final int MAGIC = 0x424D5346; // "FSMB" read as little-endian bytes
+    static final short FORMAT_VERSION = 2;
+    private static final int HEADER_BYTES = 28;
+    private static final int V1_HEADER_BYTES = 24;
+
+    private FSMFile() {
+    }
+
+    /*
+     Writes the machine to a temporary file and moves it over the target, so a
+     machine still mapped from the old file is never truncated under a reader.*/
+    static void write(CompiledFSM fsm, Path path) throws IOException {
+        int stateCount = fsm.stateCount();
+        byte[][] names = new byte[stateCount][];
+        int[] offsets = new int[stateCount + 1];
+        for (int i = 0; i < stateCount; i++) {
+            names[i] = fsm.stateName(i).getBytes(StandardCharsets.UTF_8);
+            offsets[i + 1] = offsets[i] + names[i].length;
+        }
+        int[] finals = new int[(stateCount + 31) / 32];
+        for (int i = 0; i < stateCount; i++) {
+            if (fsm.finals[i]) finals[i >>> 5] |= 1 << (i & 31);
+        }
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putShort(FORMAT_VERSION).putShort((short) CompiledFSM.ALPHABET)
+                    .putInt(fsm.symbolNames.length).putInt(stateCount).putInt(fsm.initial)
+                    .putInt(fsm.extra.length / 3).putInt(fsm.nfa.length / 3);
+            putInts(out, buf, offsets);
+            putInts(out, buf, finals);
+            putInts(out, buf, fsm.table);
+            putInts(out, buf, fsm.extra);
+            putInts(out, buf, fsm.nfa);
+            for (String symbol : fsm.symbolNames) {
+                byte[] bytes = symbol.getBytes(StandardCharsets.UTF_8);
+                putBytes(out, buf, new byte[]{(byte) bytes.length, (byte) (bytes.length >>> 8)});
+                putBytes(out, buf, bytes);
+            }
+            for (byte[] name : names) putBytes(out, buf, name);
+            drain(out, buf);
+            out.force(false);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /*
+     Memory-maps a compiled file. The int sections are bulk-copied into the
+     table, state names stay in the mapping and are decoded only when asked for.
+     Ids, symbols and name offsets are checked here, so a damaged file is an
+     IOException and not a failure on some later command.*/
+    static CompiledFSM read(Path path, long version) throws IOException {
+        MappedByteBuffer map;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            map = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+        ByteBuffer buf = map.order(ByteOrder.LITTLE_ENDIAN);
+        if (buf.remaining() < V1_HEADER_BYTES || buf.getInt(0) != MAGIC) {
+            throw new IOException("not a compiled FSM file");
+        }
+        short format = buf.getShort(4);
+        if (format != 1 && format != FORMAT_VERSION) {
+            throw new IOException("unsupported format version " + format);
+        }
+        int headerBytes = format == 1 ? V1_HEADER_BYTES : HEADER_BYTES;
+        if (buf.getShort(6) != CompiledFSM.ALPHABET) {
+            throw new IOException("unsupported alphabet size " + buf.getShort(6));
+        }
+        int symbolCount = buf.getInt(8);
+        int stateCount = buf.getInt(12);
+        int initial = buf.getInt(16);
+        int extraCount = buf.getInt(20);
+
+        try {
+            int nfaCount = format == 1 ? 0 : buf.getInt(24);
+            IntBuffer ints = buf.position(headerBytes).asIntBuffer();
+            int[] offsets = new int[stateCount + 1];
+            ints.get(offsets);
+            if (offsets[0] != 0) throw new IOException("state names do not start at offset 0");
+            for (int i = 0; i < stateCount; i++) {
+                if (offsets[i + 1] < offsets[i]) throw new IOException("state name offsets " + i + " and " + (i + 1) + " out of order");
+            }
+            int[] finalBits = new int[(stateCount + 31) / 32];
+            ints.get(finalBits);
+            int[] table = new int[Math.multiplyExact(stateCount, CompiledFSM.ALPHABET)];
+            ints.get(table);
+            int[] extra = new int[Math.multiplyExact(extraCount, 3)];
+            ints.get(extra);
+            int[] nfa = new int[Math.multiplyExact(nfaCount, 3)];
+            ints.get(nfa);
+
+            for (int target : table) {
+                if (target < CompiledFSM.NONE || target >= stateCount) {
+                    throw new IOException("transition target " + target + " out of range");
+                }
+            }
+            for (int i = 0; i < extra.length; i += 3) {
+                if (extra[i] < 0 || extra[i] >= stateCount || extra[i + 1] < 0 || extra[i + 1] >= symbolCount
+                        || extra[i + 2] < 0 || extra[i + 2] >= stateCount) {
+                    throw new IOException("transition " + (i / 3) + " on a multi-character symbol out of range");
+                }
+            }
+            for (int i = 0; i < nfa.length; i += 3) {
+                if (nfa[i] < 0 || nfa[i] >= stateCount || nfa[i + 1] < 0 || nfa[i + 1] > CompiledFSM.EPSILON
+                        || nfa[i + 2] < 0 || nfa[i + 2] >= stateCount) {
+                    throw new IOException("NFA move " + (i / 3) + " out of range");
+                }
+            }
+
+            boolean[] finals = new boolean[stateCount];
+            for (int i = 0; i < stateCount; i++) {
+                finals[i] = (finalBits[i >>> 5] & (1 << (i & 31))) != 0;
+            }
+
+            int pos = headerBytes + 4 * ints.position();
+            String[] symbols = new String[symbolCount];
+            Set<String> declared = new HashSet<>(symbolCount * 2);
+            for (int i = 0; i < symbolCount; i++) {
+                int length = buf.getShort(pos) & 0xFFFF;
+                byte[] bytes = new byte[length];
+                buf.get(pos + 2, bytes);
+                symbols[i] = new String(bytes, StandardCharsets.UTF_8);
+                pos += 2 + length;
+                // Same rules as SYMBOLS, and stored upper-case as the REPL writes them
+                ValidationError error = Validator.symbol(symbols[i], declared);
+                if (error == null && !symbols[i].equals(symbols[i].toUpperCase(Locale.ROOT))) {
+                    error = new ValidationError(ValidationError.Kind.INVALID_SYMBOL, symbols[i],
+                            "symbol '" + symbols[i] + "' is not upper case");
+                }
+                if (error != null) throw new IOException("symbol " + i + ": " + error.message());
+                declared.add(symbols[i]);
+            }
+            ByteBuffer nameData = buf.slice(pos, offsets[stateCount]);
+
+            if (initial < CompiledFSM.NONE || initial >= stateCount) {
+                throw new IOException("initial state id " + initial + " out of range");
+            }
+            return new CompiledFSM(version, symbols, new String[stateCount], nameData, offsets,
+                    table, finals, initial, extra, nfa);
+        } catch (RuntimeException e) {
+            // BufferUnderflowException, IndexOutOfBoundsException, ArithmeticException on a damaged file
+            throw new IOException("truncated or damaged FSM file", e);
+        }
+    }
+
+    private static void putInts(FileChannel out, ByteBuffer buf, int[] values) throws IOException {
+        int i = 0;
+        while (i < values.length) {
+            if (buf.remaining() < 4) drain(out, buf);
+            int n = Math.min(values.length - i, buf.remaining() / 4);
+            buf.asIntBuffer().put(values, i, n);
+            buf.position(buf.position() + 4 * n);
+            i += n;
+        }
+    }
+
+    private static void putBytes(FileChannel out, ByteBuffer buf, byte[] bytes) throws IOException {
+        int i = 0;
+        while (i < bytes.length) {
+            if (!buf.hasRemaining()) drain(out, buf);
+            int n = Math.min(bytes.length - i, buf.remaining());
+            buf.put(bytes, i, n);
+            i += n;
+        }
+    }
+
+    private static void drain(FileChannel out, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) out.write(buf);
+        buf.clear();
+    }
+}
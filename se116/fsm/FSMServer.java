@@ -0,0 +1,156 @@
+package se116.fsm;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/*
+ Serves one compiled FSM over a local TCP socket (--serve on the command line).
+ The protocol is line based, one request per line, a trailing ';' is ignored:
+   EXECUTE <input> <input> ...   one answer line with YES or NO per input
+   EXECUTE-TOKENS <input> ...    the same for token streams, symbols separated by commas
+   RELOAD [file]                 reads the file again, or another one, and swaps it in
+   QUIT                          closes the connection
+ Clients may send requests without waiting for the answers. Answers come in
+ request order and are only flushed once no further request is waiting, so a
+ pipelined batch costs one write.
+ Every connection runs on its own virtual thread. The machine is immutable and
+ published through a volatile field: a request runs on the machine it started
+ with, and RELOAD never blocks or disturbs requests that are running.*/
+final class FSMServer implements Closeable {
+    private final ServerSocket server;
+    private volatile CompiledFSM fsm;
+    private Path file; // guarded by this, the file RELOAD without a name reads
+
+    /*
+     Loads the machine and binds the loopback address; port 0 picks a free port*/
+    FSMServer(Path file, int port) throws IOException {
+        this.fsm = CompiledFSM.load(file);
+        this.file = file;
+        this.server = new ServerSocket();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    int port() {
+        return server.getLocalPort();
+    }
+
+    /*
+     Accepts connections until the server is closed*/
+    void serve() throws IOException {
+        Thread.Builder clients = Thread.ofVirtual().name("fsm-client-", 0);
+        while (!server.isClosed()) {
+            Socket client;
+            try {
+                client = server.accept();
+            } catch (SocketException e) {
+                if (server.isClosed()) return;
+                throw e;
+            }
+            clients.start(() -> handle(client));
+        }
+    }
+
+    /*
+     Reads a compiled file and makes it the served machine. Reloads are applied
+     one at a time so the last one to finish is the one that is served.*/
+    synchronized CompiledFSM reload(Path path) throws IOException {
+        CompiledFSM loaded = CompiledFSM.load(path == null ? file : path);
+        if (path != null) file = path;
+        fsm = loaded;
+        return loaded;
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void handle(Socket client) {
+        try (client) {
+            client.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8), 1 << 16);
+            OutputSink out = new OutputSink(client.getOutputStream());
+            CommandTokenizer tokens = new CommandTokenizer();
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!request(line, tokens, out)) break;
+                // Answers of pipelined requests are collected until the client waits for them
+                if (!in.ready()) out.flush();
+            }
+            out.flush();
+        } catch (IOException | UncheckedIOException e) {
+            // The client went away; nothing to answer
+        }
+    }
+
+    /*
+     Answers one request line into the sink, false on QUIT*/
+    private boolean request(String line, CommandTokenizer tokens, OutputSink out) {
+        int end = line.length();
+        while (end > 0 && (line.charAt(end - 1) == ';' || CommandTokenizer.isSpace(line.charAt(end - 1)))) end--;
+        tokens.reset(end == line.length() ? line : line.substring(0, end));
+        if (tokens.count() == 0) return true;
+
+        String command = tokens.upper(0);
+        switch (command) {
+            case "EXECUTE":
+                if (tokens.count() == 1) {
+                    out.line("Error: EXECUTE requires at least one input string");
+                    break;
+                }
+                CompiledFSM m = fsm; // every input of the batch runs on the same machine
+                for (int i = 1; i < tokens.count(); i++) {
+                    if (i > 1) out.append(' ');
+                    out.append(m.accepts(tokens.view(i)) ? "YES" : "NO");
+                }
+                out.line();
+                break;
+            case "EXECUTE-TOKENS":
+                if (tokens.count() == 1) {
+                    out.line("Error: EXECUTE-TOKENS requires at least one input");
+                    break;
+                }
+                CompiledFSM d = fsm;
+                if (!d.isDeterministic()) {
+                    out.line("Error: EXECUTE-TOKENS requires a deterministic FSM");
+                    break;
+                }
+                for (int i = 1; i < tokens.count(); i++) {
+                    if (i > 1) out.append(' ');
+                    out.append(d.acceptsTokens(tokens.view(i)) ? "YES" : "NO");
+                }
+                out.line();
+                break;
+            case "RELOAD":
+                if (tokens.count() > 2) {
+                    out.line("Error: RELOAD takes at most one filename");
+                    break;
+                }
+                String name = tokens.count() == 2 ? tokens.raw(1) : null;
+                try {
+                    CompiledFSM loaded = reload(name == null ? null : Paths.get(name));
+                    out.append("OK ").append(loaded.stateCount()).append(" states").line();
+                } catch (IOException | RuntimeException e) {
+                    out.line("Error: unable to load FSM" + (name == null ? "" : " from file '" + name + "'") + ": " + e);
+                }
+                break;
+            case "QUIT":
+                return false;
+            default:
+                out.line("Error: unknown request '" + command + "'");
+        }
+        return true;
+    }
+}
@@ -0,0 +1,19 @@
+package se116.fsm;
+
+import java.util.List;
+
+/*
+ Thrown by FSMBuilder.build() with every error of the definition*/
+public final class FSMValidationException extends IllegalArgumentException {
+    private final List<ValidationError> errors;
+
+    FSMValidationException(List<ValidationError> errors) {
+        super(errors.size() == 1 ? errors.get(0).message()
+                : errors.get(0).message() + " (and " + (errors.size() - 1) + " more errors)");
+        this.errors = List.copyOf(errors);
+    }
+
+    public List<ValidationError> errors() {
+        return errors;
+    }
+}
@@ -0,0 +1,388 @@
+package se116.fsm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/*
+ Edit journal behind the JOURNAL command.
+ Every edit is appended as a record to journal-<n>.log in the journal
+ directory; snapshot-<n>.fsm, a COMPILE file, holds the machine as it was
+ when journal-<n>.log was started. Recovery loads the newest snapshot and
+ replays the journal segments from its number on.
+ Records are [int length][int CRC32C][kind][UTF-8 text], little-endian; a
+ record that is cut off or does not match its checksum ends the journal, so
+ a crash in the middle of a write loses at most the edits that were not yet
+ committed.
+ Group commit: append() only copies the record into a buffer. A writer thread
+ swaps the buffer out, writes it and forces the file once for everything that
+ piled up while the previous force was running; sync() waits until all
+ records so far are on disk.
+ When a segment has grown past SNAPSHOT_BYTES the next one is started and the
+ machine is written as its snapshot on a background thread, from the
+ immutable CompiledFSM, so the REPL does not wait and recovery never replays
+ more than about one segment. Older segments and snapshots are deleted once
+ the new snapshot is on disk.*/
+final class Journal implements Closeable {
+    static final byte COMMAND = 'C'; // a command line, replayed through process()
+    static final byte BEGIN = 'B';   // a TRANSITIONS block streamed from a script: begin, text, end
+    static final byte FEED = 'F';
+    static final byte END = 'E';
+
+    private static final long SNAPSHOT_BYTES = 16L << 20; // segment size after which a snapshot is taken
+    private static final int HEADER_BYTES = 9;
+
+    // Replays one record, called for every record found by recover()
+    interface Replayer {
+        void replay(byte kind, String text);
+    }
+
+    // What recover() found
+    static final class Recovery {
+        CompiledFSM snapshot;   // null when there is none, the replay starts from an empty machine
+        String snapshotFile;
+        long records;
+        String damaged;         // file whose tail was cut off, null if the journal was intact
+    }
+
+    private final Path dir;
+    private final Thread writer;
+
+    // Guarded by this: records not yet handed to the writer, the open segment, positions
+    private byte[] pending = new byte[1 << 16];
+    private int pendingLength;
+    private byte[] spare = new byte[1 << 16];
+    private FileChannel channel;
+    private int segment;
+    private long segmentBytes;  // bytes appended to the open segment
+    private long appended;      // bytes appended since the journal was opened
+    private long durable;       // bytes of those that are forced to disk
+    private IOException failure;
+    private boolean closing;
+
+    private volatile Thread snapshotter; // background snapshot being written, null when idle
+    private volatile IOException snapshotFailure; // why the last background snapshot failed, until taken
+
+    private final CRC32C crc = new CRC32C();
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+    private Journal(Path dir, int segment, long segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segment = segment;
+        this.segmentBytes = segmentBytes;
+        this.channel = FileChannel.open(segmentPath(segment), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        channel.position(segmentBytes);
+        this.writer = new Thread(this::drain, "fsm-journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /*
+     Starts a journal in an empty directory. The current machine is written as
+     the first snapshot unless it is empty.*/
+    static Journal create(Path dir, CompiledFSM current) throws IOException {
+        Files.createDirectories(dir);
+        if (current.stateCount() > 0 || current.symbolNames.length > 0) {
+            FSMFile.write(current, dir.resolve(snapshotName(1)));
+        }
+        return new Journal(dir, 1, 0);
+    }
+
+    /*
+     True if the directory holds a snapshot or journal segment to recover from*/
+    static boolean exists(Path dir) throws IOException {
+        return Files.isDirectory(dir) && !(files(dir, "snapshot-", ".fsm").isEmpty() && files(dir, "journal-", ".log").isEmpty());
+    }
+
+    /*
+     Loads the newest snapshot, hands it to install and replays every record
+     written after it. The journal is cut after the last intact record and
+     opened for appending behind it. Files the snapshot made obsolete and
+     unfinished snapshots are removed.*/
+    static Journal recover(Path dir, long version, Consumer<CompiledFSM> install,
+                           Replayer replayer, Recovery result) throws IOException {
+        TreeMap<Integer, Path> snapshots = files(dir, "snapshot-", ".fsm");
+        TreeMap<Integer, Path> segments = files(dir, "journal-", ".log");
+        int first = snapshots.isEmpty() ? (segments.isEmpty() ? 1 : segments.firstKey()) : snapshots.lastKey();
+        if (!snapshots.isEmpty()) {
+            result.snapshot = FSMFile.read(snapshots.lastEntry().getValue(), version);
+            result.snapshotFile = snapshots.lastEntry().getValue().getFileName().toString();
+        }
+        install.accept(result.snapshot);
+
+        // Replay the segments from the snapshot on, stopping at the first damaged record
+        int last = first;
+        long lastBytes = 0;
+        for (int n = first; segments.containsKey(n); n++) {
+            last = n;
+            lastBytes = replay(segments.get(n), replayer, result);
+            if (result.damaged != null) break;
+        }
+        if (result.damaged != null) {
+            for (int n : segments.tailMap(last, false).keySet()) Files.delete(segments.get(n));
+        }
+        try (FileChannel f = FileChannel.open(segmentPath(dir, last), StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            if (f.size() > lastBytes) f.truncate(lastBytes);
+        }
+        cleanUp(dir, first);
+        for (Path p : files(dir, "snapshot-", ".fsm.tmp").values()) Files.deleteIfExists(p);
+        return new Journal(dir, last, lastBytes);
+    }
+
+    // Replays the records of one segment, returns the length of its intact part
+    private static long replay(Path path, Replayer replayer, Recovery result) throws IOException {
+        try (FileChannel f = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = f.size();
+            if (size == 0) return 0;
+            MappedByteBuffer buf = f.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            CRC32C crc = new CRC32C();
+            int pos = 0;
+            while (pos < size) {
+                if (size - pos < HEADER_BYTES) break;
+                int length = buf.getInt(pos);
+                int checksum = buf.getInt(pos + 4);
+                if (length < 1 || length > size - pos - 8) break;
+                crc.reset();
+                crc.update(buf.slice(pos + 8, length));
+                if ((int) crc.getValue() != checksum) break;
+                byte[] text = new byte[length - 1];
+                buf.get(pos + 9, text);
+                replayer.replay(buf.get(pos + 8), new String(text, StandardCharsets.UTF_8));
+                result.records++;
+                pos += 8 + length;
+            }
+            if (pos < size) result.damaged = path.getFileName().toString();
+            return pos;
+        }
+    }
+
+    /*
+     Queues a record; the writer thread writes it with the next group*/
+    void append(byte kind, CharSequence text) {
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            check();
+            crc.reset();
+            crc.update(kind);
+            crc.update(bytes);
+            header.clear();
+            header.putInt(bytes.length + 1).putInt((int) crc.getValue()).put(kind);
+            int length = HEADER_BYTES + bytes.length;
+            if (pendingLength + length > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + length));
+            }
+            System.arraycopy(header.array(), 0, pending, pendingLength, HEADER_BYTES);
+            System.arraycopy(bytes, 0, pending, pendingLength + HEADER_BYTES, bytes.length);
+            pendingLength += length;
+            segmentBytes += length;
+            appended += length;
+            notifyAll();
+        }
+    }
+
+    /*
+     Waits until every record appended so far is forced to disk*/
+    synchronized void sync() {
+        long target = appended;
+        while (durable < target) {
+            check();
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        check();
+    }
+
+    /*
+     True when the open segment is big enough to start a new one with a snapshot*/
+    synchronized boolean full() {
+        return segmentBytes >= SNAPSHOT_BYTES && snapshotter == null;
+    }
+
+    /*
+     Starts the next segment. fsm is the machine after the last record appended,
+     it becomes the snapshot of the new segment: written on a background thread,
+     or right away when wait is set because the change that led to it was not
+     journaled (LOAD, INTERSECT, ...) and the old segments can not replay it.
+     The header records are appended to the new segment before anything else.*/
+    void checkpoint(CompiledFSM fsm, boolean wait, List<String> header) throws IOException {
+        Thread running = snapshotter;
+        if (running != null && wait) join(running);
+        int next;
+        synchronized (this) {
+            sync();
+            channel.close();
+            next = ++segment;
+            channel = FileChannel.open(segmentPath(next), StandardOpenOption.WRITE,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+            segmentBytes = 0;
+        }
+        for (String line : header) append(COMMAND, line);
+        if (wait) {
+            FSMFile.write(fsm, dir.resolve(snapshotName(next)));
+            cleanUp(dir, next);
+            return;
+        }
+        Thread t = new Thread(() -> {
+            try {
+                FSMFile.write(fsm, dir.resolve(snapshotName(next)));
+                cleanUp(dir, next);
+            } catch (IOException e) {
+                // The old snapshot and segments are still there, recovery just replays more
+                snapshotFailure = e;
+            } finally {
+                snapshotter = null;
+            }
+        }, "fsm-journal-snapshot");
+        t.setDaemon(true);
+        snapshotter = t;
+        t.start();
+    }
+
+    /*
+     The error of a background snapshot that failed since the last call, null if none*/
+    IOException takeSnapshotFailure() {
+        IOException e = snapshotFailure;
+        if (e != null) snapshotFailure = null;
+        return e;
+    }
+
+    Path dir() {
+        return dir;
+    }
+
+    synchronized int segment() {
+        return segment;
+    }
+
+    synchronized long appended() {
+        return appended;
+    }
+
+    /*
+     Syncs and stops the writer thread. A background snapshot still being
+     written is left to finish or be discarded with the process; its
+     temporary file is removed by the next recovery.*/
+    @Override
+    public void close() {
+        try {
+            sync();
+        } finally {
+            synchronized (this) {
+                closing = true;
+                notifyAll();
+            }
+            join(writer);
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // everything was forced or the failure was reported already
+            }
+        }
+    }
+
+    // Writer thread: takes whatever was appended, writes it and forces it as one group
+    private void drain() {
+        while (true) {
+            byte[] batch;
+            int length;
+            FileChannel out;
+            synchronized (this) {
+                while (pendingLength == 0 && !closing) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pendingLength == 0) return;
+                batch = pending;
+                length = pendingLength;
+                pending = spare;
+                pendingLength = 0;
+                spare = batch;
+                out = channel;
+            }
+            try {
+                ByteBuffer buf = ByteBuffer.wrap(batch, 0, length);
+                while (buf.hasRemaining()) out.write(buf);
+                out.force(false);
+            } catch (IOException e) {
+                synchronized (this) {
+                    failure = e;
+                    notifyAll();
+                }
+                return;
+            }
+            synchronized (this) {
+                durable += length;
+                notifyAll();
+            }
+        }
+    }
+
+    private void check() {
+        if (failure != null) throw new UncheckedIOException(failure);
+    }
+
+    private Path segmentPath(int n) {
+        return segmentPath(dir, n);
+    }
+
+    private static Path segmentPath(Path dir, int n) {
+        return dir.resolve("journal-" + n + ".log");
+    }
+
+    private static String snapshotName(int n) {
+        return "snapshot-" + n + ".fsm";
+    }
+
+    // Removes the segments and snapshots older than segment n
+    private static void cleanUp(Path dir, int n) throws IOException {
+        for (Path p : files(dir, "snapshot-", ".fsm").headMap(n).values()) Files.deleteIfExists(p);
+        for (Path p : files(dir, "journal-", ".log").headMap(n).values()) Files.deleteIfExists(p);
+    }
+
+    // Files named prefix + number + suffix, by number
+    private static TreeMap<Integer, Path> files(Path dir, String prefix, String suffix) throws IOException {
+        TreeMap<Integer, Path> found = new TreeMap<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path p : ds) {
+                String name = p.getFileName().toString();
+                String number = name.substring(prefix.length(), name.length() - suffix.length());
+                try {
+                    found.put(Integer.parseInt(number), p);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return found;
+    }
+
+    private static void join(Thread t) {
+        try {
+            t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package se116.fsm;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ Executes a nondeterministic FSM through a DFA that is built on demand.
+ Each DFA state is an epsilon-closed set of NFA states; its transitions are
+ computed by subset construction the first time they are used and then cached
+ in an int table, so a warm run costs one array load per character like a DFA.
+ The cache holds at most `capacity` DFA states. When it is full everything is
+ dropped except the state currently being executed and construction starts
+ again, which bounds memory without ever failing a run.
+ Not thread-safe; every thread uses its own instance.*/
+final class LazyDFA {
+    static final int DEAD = -1;              // empty set of NFA states, rejects
+    private static final int UNKNOWN = -2;   // transition not built yet
+    private static final int W = CompiledFSM.ALPHABET;
+
+    final CompiledFSM fsm;
+    private final int capacity;
+
+    // NFA moves in CSR form, index state * (W + 1) + symbol, symbol W is epsilon
+    private final int[] moveStart;
+    private final int[] moveTargets;
+
+    // DFA cache
+    private int[][] sets;
+    private boolean[] accepting;
+    private int[] trans;
+    private int count;
+    private final Map<SetKey, Integer> ids = new HashMap<>();
+    private int start = UNKNOWN;
+    long flushes; // number of times the cache was full and dropped
+
+    // Scratch space for subset construction
+    private final int[] mark;
+    private int generation;
+    private int[] scratch;
+
+    LazyDFA(CompiledFSM fsm, int capacity) {
+        this.fsm = fsm;
+        this.capacity = Math.max(capacity, 2);
+        int n = fsm.stateCount();
+
+        // Deterministic table entries and the extra NFA moves, grouped by (state, symbol)
+        int[] start = new int[n * (W + 1) + 1];
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < W; c++) {
+                if (fsm.step(s, c) != CompiledFSM.NONE) start[s * (W + 1) + c + 1]++;
+            }
+        }
+        int[] nfa = fsm.nfa;
+        for (int i = 0; i < nfa.length; i += 3) start[nfa[i] * (W + 1) + nfa[i + 1] + 1]++;
+        for (int i = 0; i < start.length - 1; i++) start[i + 1] += start[i];
+        int[] targets = new int[start[start.length - 1]];
+        int[] fill = Arrays.copyOf(start, start.length - 1);
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < W; c++) {
+                int t = fsm.step(s, c);
+                if (t != CompiledFSM.NONE) targets[fill[s * (W + 1) + c]++] = t;
+            }
+        }
+        for (int i = 0; i < nfa.length; i += 3) targets[fill[nfa[i] * (W + 1) + nfa[i + 1]]++] = nfa[i + 2];
+        this.moveStart = start;
+        this.moveTargets = targets;
+
+        this.mark = new int[n];
+        this.scratch = new int[16];
+        int initial = Math.min(this.capacity, 64);
+        this.sets = new int[initial][];
+        this.accepting = new boolean[initial];
+        this.trans = new int[initial * W];
+    }
+
+    /*
+     DFA state for the epsilon closure of the initial state*/
+    int start() {
+        if (start == UNKNOWN) {
+            if (fsm.initial == CompiledFSM.NONE) {
+                start = DEAD;
+            } else {
+                int size = begin();
+                scratch[size++] = fsm.initial;
+                mark[fsm.initial] = generation;
+                start = intern(close(size));
+            }
+        }
+        return start;
+    }
+
+    boolean accepting(int state) {
+        return state != DEAD && accepting[state];
+    }
+
+    int cachedStates() {
+        return count;
+    }
+
+    /*
+     NFA states of a DFA state, sorted; the array is never changed, so it stays
+     valid after a flush and can be handed to another instance over the same FSM*/
+    int[] set(int state) {
+        return sets[state];
+    }
+
+    /*
+     DFA state of a set returned by set()*/
+    int state(int[] set) {
+        return intern(set);
+    }
+
+    /*
+     Follows one symbol, building the target DFA state if needed. The returned
+     id is only valid until the next call, a flush renumbers the cache.*/
+    int step(int state, int symbol) {
+        int next = trans[state * W + symbol];
+        if (next != UNKNOWN) return next;
+        return build(state, symbol);
+    }
+
+    boolean accepts(CharSequence input) {
+        int state = start();
+        for (int i = 0, n = input.length(); i < n && state != DEAD; i++) {
+            int sym = CompiledFSM.symbolIndex(input.charAt(i));
+            if (sym < 0) return false;
+            state = step(state, sym);
+        }
+        return accepting(state);
+    }
+
+    boolean accepts(ByteBuffer in, int from, int to) {
+        int state = start();
+        for (int i = from; i < to && state != DEAD; i++) {
+            int sym = CompiledFSM.symbolIndex((char) (in.get(i) & 0xFF));
+            if (sym < 0) return false;
+            state = step(state, sym);
+        }
+        return accepting(state);
+    }
+
+    private int build(int state, int symbol) {
+        int[] from = sets[state];
+        int size = begin();
+        for (int s : from) {
+            for (int i = moveStart[s * (W + 1) + symbol]; i < moveStart[s * (W + 1) + symbol + 1]; i++) {
+                size = add(size, moveTargets[i]);
+            }
+        }
+        if (size == 0) {
+            trans[state * W + symbol] = DEAD;
+            return DEAD;
+        }
+        long before = flushes;
+        int next = intern(close(size));
+        // After a flush the source state is gone, only the target is kept
+        if (flushes == before) trans[state * W + symbol] = next;
+        return next;
+    }
+
+    /*
+     Epsilon closure of scratch[0, size) with an explicit stack, returned sorted*/
+    private int[] close(int size) {
+        int[] stack = Arrays.copyOf(scratch, size);
+        int top = size;
+        while (top > 0) {
+            int s = stack[--top];
+            for (int i = moveStart[s * (W + 1) + W]; i < moveStart[s * (W + 1) + W + 1]; i++) {
+                int t = moveTargets[i];
+                if (mark[t] != generation) {
+                    size = add(size, t);
+                    if (top == stack.length) stack = Arrays.copyOf(stack, top * 2);
+                    stack[top++] = t;
+                }
+            }
+        }
+        int[] set = Arrays.copyOf(scratch, size);
+        Arrays.sort(set);
+        return set;
+    }
+
+    private int begin() {
+        if (++generation == 0) {
+            Arrays.fill(mark, 0);
+            generation = 1;
+        }
+        return 0;
+    }
+
+    private int add(int size, int s) {
+        if (mark[s] == generation) return size;
+        mark[s] = generation;
+        if (size == scratch.length) scratch = Arrays.copyOf(scratch, size * 2);
+        scratch[size] = s;
+        return size + 1;
+    }
+
+    private int intern(int[] set) {
+        SetKey key = new SetKey(set);
+        Integer id = ids.get(key);
+        if (id != null) return id;
+        if (count == capacity) flush();
+        if (count == sets.length) {
+            int grown = Math.min(capacity, count * 2);
+            sets = Arrays.copyOf(sets, grown);
+            accepting = Arrays.copyOf(accepting, grown);
+            trans = Arrays.copyOf(trans, grown * W);
+        }
+        int next = count++;
+        sets[next] = set;
+        boolean acc = false;
+        for (int s : set) acc |= fsm.finals[s];
+        accepting[next] = acc;
+        Arrays.fill(trans, next * W, next * W + W, UNKNOWN);
+        ids.put(key, next);
+        return next;
+    }
+
+    private void flush() {
+        flushes++;
+        Arrays.fill(sets, 0, count, null);
+        ids.clear();
+        count = 0;
+        start = UNKNOWN;
+    }
+
+    // Hash key over the sorted NFA states of a DFA state
+    private static final class SetKey {
+        final int[] set;
+        final int hash;
+
+        SetKey(int[] set) {
+            this.set = set;
+            this.hash = Arrays.hashCode(set);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SetKey && Arrays.equals(set, ((SetKey) o).set);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package se116.fsm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ Finds where the substrings of a file that the FSM accepts end (SCAN).
+ The search runs the machine with a new initial state in front that stays on
+ every symbol, so a match can start at any byte. That machine is an NFA even
+ for a DFA and is executed through a LazyDFA, which makes the scan one cached
+ step per byte however many matches are in progress. Every offset after which
+ a non-empty match ends is written as a line (end exclusive, in bytes); the
+ start of a match is not tracked, that would cost a step per live match.
+ Bytes that are not symbols end all matches in progress. Transitions on
+ multi-character symbols (extra) are not part of the search; SCAN refuses
+ machines that have any rather than report matches without them.
+ The file is memory-mapped one window at a time and cut into regions that are
+ scanned on a fork-join pool, with a bounded number of regions in flight so the
+ buffered results stay small. A region reports the matches ending in it; matches
+ that start before it are found by starting the scan after the last non-symbol
+ byte before the region. When there is none within LOOKBACK bytes the region
+ waits for its predecessor and continues from the state it ended in, so matches
+ across region boundaries are exact either way.*/
+final class MatchScanner {
+    private static final long WINDOW = 1L << 30;  // bytes mapped at once
+    private static final int REGION = 1 << 20;    // bytes of input per task
+    private static final int IN_FLIGHT = 4;       // regions per thread scanned ahead of the writer
+    private static final int LOOKBACK = 1 << 16;  // bytes searched backwards for a non-symbol byte
+
+    // Totals of one scan
+    static final class Summary {
+        long bytes;
+        long matches;
+        int regions;
+        int chained;   // regions that continued from their predecessor's end state
+    }
+
+    private MatchScanner() {
+    }
+
+    /*
+     dfaCacheStates bounds the lazy DFA each worker thread builds for the search*/
+    static Summary scan(CompiledFSM fsm, int dfaCacheStates, Path input, Path output, int threads) throws IOException {
+        CompiledFSM search = searchMachine(fsm);
+        ThreadLocal<LazyDFA> dfas = ThreadLocal.withInitial(() -> new LazyDFA(search, dfaCacheStates));
+        Summary summary = new Summary();
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output, StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            summary.bytes = size;
+            ArrayDeque<RegionTask> running = new ArrayDeque<>();
+            RegionTask previous = null;
+            MappedByteBuffer window = null;
+            long base = 0;
+            long pos = 0;
+            while (pos < size || !running.isEmpty()) {
+                // Start regions until enough are ahead of the writer
+                while (pos < size && running.size() < threads * IN_FLIGHT) {
+                    if (window == null || pos == base + window.capacity()) {
+                        base = pos;
+                        window = in.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size - pos));
+                    }
+                    int from = (int) (pos - base);
+                    int to = Math.min(from + REGION, window.capacity());
+                    previous = region(dfas, window, base, from, to, previous);
+                    pool.execute(previous);
+                    running.add(previous);
+                    summary.regions++;
+                    if (previous.chained) summary.chained++;
+                    pos = base + to;
+                }
+
+                // Write the oldest region's matches
+                Region r = running.poll().join();
+                summary.matches += r.matches;
+                ByteBuffer bytes = ByteBuffer.wrap(r.out, 0, r.length);
+                while (bytes.hasRemaining()) out.write(bytes);
+                r.out = null; // the end state may still be needed by a chained successor
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return summary;
+    }
+
+    /*
+     The FSM with a new initial state in front: it stays on every symbol and has
+     the moves of the old initial state's epsilon closure, so a match can start
+     at any byte but is never empty*/
+    static CompiledFSM searchMachine(CompiledFSM fsm) {
+        int n = fsm.stateCount();
+        int[] table = Arrays.copyOf(fsm.table, (n + 1) * CompiledFSM.ALPHABET);
+        Arrays.fill(table, n * CompiledFSM.ALPHABET, (n + 1) * CompiledFSM.ALPHABET, n);
+
+        LazyDFA closure = new LazyDFA(fsm, 2);
+        int[] starts = closure.set(closure.start());
+        int[] nfa = Arrays.copyOf(fsm.nfa, fsm.nfa.length + 3 * CompiledFSM.ALPHABET * starts.length);
+        int length = fsm.nfa.length;
+        for (int s : starts) {
+            for (int sym = 0; sym < CompiledFSM.ALPHABET; sym++) {
+                int to = fsm.step(s, sym);
+                if (to == CompiledFSM.NONE) continue;
+                nfa[length++] = n;
+                nfa[length++] = sym;
+                nfa[length++] = to;
+            }
+        }
+        for (int i = 0, end = fsm.nfa.length; i < end; i += 3) {
+            if (fsm.nfa[i + 1] == CompiledFSM.EPSILON || Arrays.binarySearch(starts, fsm.nfa[i]) < 0) continue;
+            if (length + 3 > nfa.length) nfa = Arrays.copyOf(nfa, nfa.length * 2);
+            nfa[length++] = n;
+            nfa[length++] = fsm.nfa[i + 1];
+            nfa[length++] = fsm.nfa[i + 2];
+        }
+
+        return new CompiledFSM(fsm.version, fsm.symbolNames, new String[0], null, null, table,
+                Arrays.copyOf(fsm.finals, n + 1), n, new int[0], Arrays.copyOf(nfa, length));
+    }
+
+    /*
+     Task for the bytes [from, to) of a window; finds where its scan starts*/
+    private static RegionTask region(ThreadLocal<LazyDFA> dfas, ByteBuffer window, long base, int from, int to,
+                                     RegionTask previous) {
+        int scanFrom = from;
+        boolean chained = false;
+        if (base + from > 0) {
+            // Back to the byte after the last non-symbol byte, in this window and within LOOKBACK
+            int limit = Math.max(0, from - LOOKBACK);
+            while (scanFrom > limit && symbol(window, scanFrom - 1)) scanFrom--;
+            chained = scanFrom > 0 ? symbol(window, scanFrom - 1) : base > 0;
+        }
+        return new RegionTask(dfas, window, base, scanFrom, from, to, chained ? previous : null);
+    }
+
+    private static boolean symbol(ByteBuffer buf, int pos) {
+        return CompiledFSM.symbolIndex((char) (buf.get(pos) & 0xFF)) >= 0;
+    }
+
+    // Match ends of one region as text, and the NFA states it ended in for a chained successor
+    private static final class Region {
+        byte[] out = new byte[1 << 12];
+        int length;
+        long matches;
+        int[] end;
+    }
+
+    private static final class RegionTask extends RecursiveTask<Region> {
+        private final ThreadLocal<LazyDFA> dfas;
+        private final ByteBuffer buf;
+        private final long base;      // file offset of buf[0]
+        private final int scanFrom;   // where the scan starts, matches are only reported from `from` on
+        private final int from;
+        private final int to;
+        private final boolean chained;
+        private RegionTask predecessor; // set when chained, dropped once its end state is taken
+
+        RegionTask(ThreadLocal<LazyDFA> dfas, ByteBuffer buf, long base, int scanFrom, int from, int to,
+                   RegionTask predecessor) {
+            this.dfas = dfas;
+            this.buf = buf;
+            this.base = base;
+            this.scanFrom = scanFrom;
+            this.from = from;
+            this.to = to;
+            this.chained = predecessor != null;
+            this.predecessor = predecessor;
+        }
+
+        @Override
+        protected Region compute() {
+            LazyDFA dfa = dfas.get();
+            Region r = new Region();
+            int state;
+            if (predecessor != null) {
+                state = dfa.state(predecessor.join().end);
+                predecessor = null; // or every region of a long run would keep the one before alive
+            } else {
+                // Up to the region only the state matters
+                state = dfa.start();
+                for (int pos = scanFrom; pos < from; pos++) {
+                    int sym = CompiledFSM.symbolIndex((char) (buf.get(pos) & 0xFF));
+                    state = sym < 0 ? dfa.start() : dfa.step(state, sym);
+                }
+            }
+
+            for (int pos = from; pos < to; pos++) {
+                int sym = CompiledFSM.symbolIndex((char) (buf.get(pos) & 0xFF));
+                state = sym < 0 ? dfa.start() : dfa.step(state, sym);
+                if (dfa.accepting(state)) match(r, base + pos + 1);
+            }
+            r.end = dfa.set(state);
+            return r;
+        }
+
+        // Appends the offset as a decimal line
+        private static void match(Region r, long end) {
+            if (r.length + 21 > r.out.length) r.out = Arrays.copyOf(r.out, r.out.length * 2);
+            int digits = 1;
+            for (long x = end; x >= 10; x /= 10) digits++;
+            for (int i = r.length + digits - 1; i >= r.length; i--) {
+                r.out[i] = (byte) ('0' + end % 10);
+                end /= 10;
+            }
+            r.length += digits;
+            r.out[r.length++] = '\n';
+            r.matches++;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package se116.fsm;
+
+import java.util.Arrays;
+
+/*
+ DFA minimization for the MINIMIZE command.
+ Works on the int table of a CompiledFSM: unreachable and dead states are
+ removed first, then Hopcroft's partition refinement merges equivalent states
+ in O(n k log n). Everything is done with int arrays and explicit worklists,
+ so there is no recursion and no boxing even for millions of transitions.*/
+final class Minimizer {
+    // Counts reported by MINIMIZE
+    static final class Result {
+        CompiledFSM fsm;
+        int before;
+        int unreachable;
+        int dead;
+        int after;
+        int droppedExtra; // transitions on multi-character symbols, not part of the executable language
+    }
+
+    private Minimizer() {
+    }
+
+    /*
+     The machine must be deterministic*/
+    static Result minimize(CompiledFSM fsm, long version) {
+        Result result = new Result();
+        int n = fsm.stateCount();
+        result.before = n;
+        result.droppedExtra = fsm.extra.length / 3;
+
+        // Only declared symbols can have transitions, they are the columns we refine on
+        int k = 0;
+        int[] cols = new int[CompiledFSM.ALPHABET];
+        for (int c = 0; c < CompiledFSM.ALPHABET; c++) {
+            if (fsm.declared[c]) cols[k++] = c;
+        }
+
+        if (fsm.initial == CompiledFSM.NONE) {
+            // Nothing is reachable, the minimal machine is empty
+            result.unreachable = n;
+            result.fsm = new CompiledFSM(version, fsm.symbolNames, new String[0], null, null,
+                    new int[0], new boolean[0], CompiledFSM.NONE, new int[0], new int[0]);
+            return result;
+        }
+
+        // 1. Forward reachability from the initial state
+        boolean[] reachable = new boolean[n];
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        reachable[fsm.initial] = true;
+        queue[tail++] = fsm.initial;
+        while (head < tail) {
+            int s = queue[head++];
+            for (int j = 0; j < k; j++) {
+                int t = fsm.step(s, cols[j]);
+                if (t != CompiledFSM.NONE && !reachable[t]) {
+                    reachable[t] = true;
+                    queue[tail++] = t;
+                }
+            }
+        }
+
+        // 2. Backward reachability from the final states over reachable states only
+        int[] predStart = new int[n + 1];
+        for (int s = 0; s < n; s++) {
+            if (!reachable[s]) continue;
+            for (int j = 0; j < k; j++) {
+                int t = fsm.step(s, cols[j]);
+                if (t != CompiledFSM.NONE) predStart[t + 1]++;
+            }
+        }
+        for (int i = 0; i < n; i++) predStart[i + 1] += predStart[i];
+        int[] pred = new int[predStart[n]];
+        int[] fill = Arrays.copyOf(predStart, n);
+        for (int s = 0; s < n; s++) {
+            if (!reachable[s]) continue;
+            for (int j = 0; j < k; j++) {
+                int t = fsm.step(s, cols[j]);
+                if (t != CompiledFSM.NONE) pred[fill[t]++] = s;
+            }
+        }
+        boolean[] live = new boolean[n];
+        head = tail = 0;
+        for (int s = 0; s < n; s++) {
+            if (reachable[s] && fsm.finals[s]) {
+                live[s] = true;
+                queue[tail++] = s;
+            }
+        }
+        while (head < tail) {
+            int t = queue[head++];
+            for (int i = predStart[t]; i < predStart[t + 1]; i++) {
+                int s = pred[i];
+                if (!live[s]) {
+                    live[s] = true;
+                    queue[tail++] = s;
+                }
+            }
+        }
+
+        // The initial state is kept even when it is dead, the machine then accepts nothing
+        live[fsm.initial] = true;
+        int[] compact = new int[n];
+        int m = 0;
+        for (int s = 0; s < n; s++) {
+            if (!reachable[s]) result.unreachable++;
+            else if (!live[s]) result.dead++;
+            compact[s] = live[s] ? m++ : CompiledFSM.NONE;
+        }
+        int[] original = new int[m];
+        for (int s = 0; s < n; s++) {
+            if (compact[s] != CompiledFSM.NONE) original[compact[s]] = s;
+        }
+
+        // 3. Trimmed total DFA over m live states plus a sink (id m) for missing transitions
+        int total = m + 1;
+        int sink = m;
+        int[] delta = new int[total * k];
+        for (int s = 0; s < m; s++) {
+            for (int j = 0; j < k; j++) {
+                int t = fsm.step(original[s], cols[j]);
+                delta[s * k + j] = t == CompiledFSM.NONE || compact[t] == CompiledFSM.NONE ? sink : compact[t];
+            }
+        }
+        Arrays.fill(delta, sink * k, total * k, sink);
+
+        int[] block = refine(delta, total, k, original, fsm.finals, sink);
+
+        // 4. One state per block, named after its first member and in the original order
+        int[] newId = new int[total];
+        Arrays.fill(newId, CompiledFSM.NONE);
+        int count = 0;
+        int[] blockId = new int[total];
+        Arrays.fill(blockId, CompiledFSM.NONE);
+        int[] representative = new int[m];
+        for (int s = 0; s < m; s++) {
+            int b = block[s];
+            if (blockId[b] == CompiledFSM.NONE) {
+                blockId[b] = count;
+                representative[count++] = s;
+            }
+            newId[s] = blockId[b];
+        }
+        int sinkBlock = block[sink];
+
+        String[] names = new String[count];
+        boolean[] finals = new boolean[count];
+        int[] table = new int[count * CompiledFSM.ALPHABET];
+        Arrays.fill(table, CompiledFSM.NONE);
+        for (int id = 0; id < count; id++) {
+            int s = representative[id];
+            names[id] = fsm.stateName(original[s]);
+            finals[id] = fsm.finals[original[s]];
+            for (int j = 0; j < k; j++) {
+                int t = delta[s * k + j];
+                if (t != sink && block[t] != sinkBlock) table[id * CompiledFSM.ALPHABET + cols[j]] = newId[t];
+            }
+        }
+        result.after = count;
+        result.fsm = new CompiledFSM(version, fsm.symbolNames, names, null, null, table, finals,
+                newId[compact[fsm.initial]], new int[0], new int[0]);
+        return result;
+    }
+
+    /*
+     Hopcroft's algorithm. Returns the block number of every state of the total DFA.
+     Blocks are contiguous ranges of elems; a split moves the marked states to
+     the front of their block and makes them a new block.*/
+    private static int[] refine(int[] delta, int total, int k, int[] original, boolean[] finalsById, int sink) {
+        // Inverse transitions grouped by (symbol, target)
+        int[] invStart = new int[total * k + 1];
+        for (int s = 0; s < total; s++) {
+            for (int j = 0; j < k; j++) invStart[j * total + delta[s * k + j] + 1]++;
+        }
+        for (int i = 0; i < total * k; i++) invStart[i + 1] += invStart[i];
+        int[] inv = new int[total * k];
+        int[] fill = Arrays.copyOf(invStart, total * k);
+        for (int s = 0; s < total; s++) {
+            for (int j = 0; j < k; j++) inv[fill[j * total + delta[s * k + j]]++] = s;
+        }
+
+        int[] elems = new int[total];
+        int[] loc = new int[total];
+        int[] blockOf = new int[total];
+        int[] first = new int[total];
+        int[] end = new int[total];
+        int[] marked = new int[total];
+        int blocks = 0;
+
+        // Initial partition: final states, other live states, the sink
+        int pos = 0;
+        for (int pass = 0; pass < 3; pass++) {
+            int start = pos;
+            for (int s = 0; s < total; s++) {
+                int kind = s == sink ? 2 : finalsById[original[s]] ? 0 : 1;
+                if (kind != pass) continue;
+                elems[pos] = s;
+                loc[s] = pos++;
+                blockOf[s] = blocks;
+            }
+            if (pos > start) {
+                first[blocks] = start;
+                end[blocks] = pos;
+                blocks++;
+            }
+        }
+
+        // Worklist of (block, symbol) splitters; every initial block except the largest
+        boolean[] inWork = new boolean[total * k];
+        int[] work = new int[total * k];
+        int workSize = 0;
+        int largest = 0;
+        for (int b = 1; b < blocks; b++) {
+            if (end[b] - first[b] > end[largest] - first[largest]) largest = b;
+        }
+        for (int b = 0; b < blocks; b++) {
+            if (b == largest) continue;
+            for (int j = 0; j < k; j++) {
+                inWork[b * k + j] = true;
+                work[workSize++] = b * k + j;
+            }
+        }
+
+        int[] touched = new int[total];
+        int[] members = new int[total];
+        while (workSize > 0) {
+            int splitter = work[--workSize];
+            inWork[splitter] = false;
+            int b = splitter / k;
+            int j = splitter % k;
+
+            // Mark every state with a j-transition into block b; b's members are copied
+            // first because marking may reorder b itself
+            int size = end[b] - first[b];
+            System.arraycopy(elems, first[b], members, 0, size);
+            int touchedCount = 0;
+            for (int i = 0; i < size; i++) {
+                int target = members[i];
+                for (int e = invStart[j * total + target]; e < invStart[j * total + target + 1]; e++) {
+                    int s = inv[e];
+                    int c = blockOf[s];
+                    if (marked[c] == 0) touched[touchedCount++] = c;
+                    // Swap s to the end of the marked prefix of its block
+                    int to = first[c] + marked[c]++;
+                    int other = elems[to];
+                    int from = loc[s];
+                    elems[to] = s;
+                    loc[s] = to;
+                    elems[from] = other;
+                    loc[other] = from;
+                }
+            }
+
+            // Split every touched block that was only partly marked
+            for (int t = 0; t < touchedCount; t++) {
+                int c = touched[t];
+                int split = first[c] + marked[c];
+                marked[c] = 0;
+                if (split == end[c]) continue;
+
+                int d = blocks++;
+                first[d] = first[c];
+                end[d] = split;
+                first[c] = split;
+                for (int i = first[d]; i < end[d]; i++) blockOf[elems[i]] = d;
+
+                int smaller = end[d] - first[d] <= end[c] - first[c] ? d : c;
+                for (int a = 0; a < k; a++) {
+                    int add = inWork[c * k + a] ? d : smaller;
+                    if (!inWork[add * k + a]) {
+                        inWork[add * k + a] = true;
+                        work[workSize++] = add * k + a;
+                    }
+                }
+            }
+        }
+        return blockOf;
+    }
+}
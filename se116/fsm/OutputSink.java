@@ -0,0 +1,173 @@
+package se116.fsm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/*
+ Buffered text output of the REPL.
+ Characters are encoded straight into one reusable byte buffer, ASCII without
+ any lookup, and the buffer only goes to the stream when it is full or on an
+ explicit flush(). Long listings therefore cost one stream write per 64 KB
+ instead of one synchronized println per line.
+ Not thread-safe; one sink per thread or connection.*/
+final class OutputSink {
+    // Console sink shared by the REPL loop and the default CommandProcessor, so their output stays in order
+    static final OutputSink CONSOLE = new OutputSink(new OutputStream() {
+        // Resolves System.out on every write, so a replaced System.out is honoured
+        @Override
+        public void write(int b) {
+            System.out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            System.out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() {
+            System.out.flush();
+        }
+    }, System.out.charset());
+
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final Charset charset;
+    private final byte[] buf = new byte[1 << 16];
+    private int pos;
+
+    // Receives every completed line while set, used by LOG; null costs nothing
+    private Consumer<String> tee;
+    private final StringBuilder teeLine = new StringBuilder();
+
+    OutputSink(OutputStream out) {
+        this(out, StandardCharsets.UTF_8);
+    }
+
+    OutputSink(OutputStream out, Charset charset) {
+        this.out = out;
+        this.charset = charset;
+    }
+
+    void tee(Consumer<String> tee) {
+        this.tee = tee;
+        teeLine.setLength(0);
+    }
+
+    OutputSink append(CharSequence s) {
+        if (tee != null) teeLine.append(s);
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (c < 128) {
+                if (pos == buf.length) drain();
+                buf[pos++] = (byte) c;
+                i++;
+            } else {
+                // Rare: encode the whole run of non-ASCII characters at once
+                int j = i + 1;
+                while (j < n && s.charAt(j) >= 128) j++;
+                put(s.subSequence(i, j).toString().getBytes(charset));
+                i = j;
+            }
+        }
+        return this;
+    }
+
+    OutputSink append(char c) {
+        if (c >= 128) return append(String.valueOf(c));
+        if (tee != null) teeLine.append(c);
+        if (pos == buf.length) drain();
+        buf[pos++] = (byte) c;
+        return this;
+    }
+
+    OutputSink append(long v) {
+        if (tee != null) teeLine.append(v);
+        if (buf.length - pos < 20) drain();
+        if (v < 0) {
+            if (v == Long.MIN_VALUE) {
+                put(Long.toString(v).getBytes(StandardCharsets.US_ASCII));
+                return this;
+            }
+            buf[pos++] = '-';
+            v = -v;
+        }
+        // Digits are written backwards after the current position, then reversed in place
+        int start = pos;
+        do {
+            buf[pos++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        for (int a = start, b = pos - 1; a < b; a++, b--) {
+            byte t = buf[a];
+            buf[a] = buf[b];
+            buf[b] = t;
+        }
+        return this;
+    }
+
+    /*
+     Ends the current line*/
+    OutputSink line() {
+        put(NEWLINE);
+        if (tee != null) {
+            tee.accept(teeLine.toString());
+            teeLine.setLength(0);
+        }
+        return this;
+    }
+
+    OutputSink line(CharSequence s) {
+        return append(s).line();
+    }
+
+    /*
+     Writes text that is not output of a command, such as the REPL prompt, and
+     flushes. It is never copied to the tee.*/
+    void prompt(CharSequence s) {
+        Consumer<String> t = tee;
+        tee = null;
+        append(s);
+        tee = t;
+        flush();
+    }
+
+    /*
+     Writes the buffered output through to the stream*/
+    void flush() {
+        drain();
+        try {
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void put(byte[] bytes) {
+        int i = 0;
+        while (i < bytes.length) {
+            if (pos == buf.length) drain();
+            int n = Math.min(bytes.length - i, buf.length - pos);
+            System.arraycopy(bytes, i, buf, pos, n);
+            pos += n;
+            i += n;
+        }
+    }
+
+    private void drain() {
+        if (pos == 0) return;
+        try {
+            out.write(buf, 0, pos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        pos = 0;
+    }
+}
@@ -0,0 +1,244 @@
+package se116.fsm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ Runs a deterministic FSM over one very long input, a whole file
+ (EXECUTE-PARALLEL), on several cores.
+ The file is memory-mapped and cut into chunks. The first chunk runs from the
+ initial state; every other chunk can only start in a state some transition
+ on the byte before it leads to, so it runs all of those states at once and
+ records where each of them ends. Paths that meet are merged and paths that
+ get stuck are dropped, so after a short prefix usually a single path is left
+ and the rest of the chunk runs like run(). Composing the chunk mappings in
+ order gives the exact end state.
+ Speculation costs as many steps per byte as there are live paths. A chunk
+ gives up when that is more than the parallelism can win back, and is then run
+ sequentially from its known start state while the mappings are composed. Big
+ machines, small files and a single thread run sequentially from the start.*/
+final class ParallelExecutor {
+    static final int MAX_STATES = 1 << 16;          // larger machines are not speculated
+    static final int MAX_THREADS = 0x7fff;          // parallelism limit of ForkJoinPool
+    private static final long WINDOW = 1L << 30;    // bytes mapped at once
+    private static final int MIN_CHUNK = 1 << 20;   // no chunk is smaller than this
+    private static final int CHUNKS_PER_THREAD = 4; // so that a slow chunk does not idle the others
+    private static final int SLACK = 1 << 16;       // steps a chunk may spend before its live paths are checked
+
+    // Totals of one run
+    static final class Result {
+        long symbols;          // input length without a trailing line break
+        int end = CompiledFSM.NONE;
+        int chunks;
+        int sequential;        // chunks that gave up speculating, or all of them without speculation
+    }
+
+    private ParallelExecutor() {
+    }
+
+    static Result run(CompiledFSM fsm, Path input, int threads) throws IOException {
+        Result result = new Result();
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long size = in.size();
+            List<ByteBuffer> windows = new ArrayList<>();
+            for (long pos = 0; pos < size; pos += WINDOW) {
+                windows.add(in.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(WINDOW, size - pos)));
+            }
+            size -= lineBreak(windows, size);
+            result.symbols = size;
+
+            boolean speculate = threads > 1 && size >= 2L * MIN_CHUNK && fsm.stateCount() <= MAX_STATES;
+            if (!speculate) {
+                result.end = fsm.initial;
+                for (int w = 0; w < windows.size() && result.end != CompiledFSM.NONE; w++) {
+                    int to = (int) Math.min(WINDOW, size - w * WINDOW);
+                    if (to > 0) result.end = fsm.run(result.end, windows.get(w), 0, to);
+                }
+                result.chunks = 1;
+                result.sequential = 1;
+                return result;
+            }
+
+            ChunkTask[] tasks = split(fsm, windows, size, threads);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                for (ChunkTask task : tasks) pool.execute(task);
+                int state = fsm.initial;
+                for (ChunkTask task : tasks) {
+                    Chunk chunk = task.join();
+                    if (state == CompiledFSM.NONE) continue; // stuck already, the rest is only waited for
+                    if (chunk.abandoned) {
+                        state = fsm.run(state, task.buf, task.from, task.to);
+                        result.sequential++;
+                    } else {
+                        state = chunk.end(state);
+                    }
+                }
+                result.end = state;
+                result.chunks = tasks.length;
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return result;
+    }
+
+    // Length of a trailing "\n" or "\r\n", which is not part of the input
+    private static int lineBreak(List<ByteBuffer> windows, long size) {
+        if (size == 0 || byteAt(windows, size - 1) != '\n') return 0;
+        return size > 1 && byteAt(windows, size - 2) == '\r' ? 2 : 1;
+    }
+
+    private static byte byteAt(List<ByteBuffer> windows, long pos) {
+        return windows.get((int) (pos / WINDOW)).get((int) (pos % WINDOW));
+    }
+
+    /*
+     Cuts [0, size) into about CHUNKS_PER_THREAD chunks per thread, never across a window*/
+    private static ChunkTask[] split(CompiledFSM fsm, List<ByteBuffer> windows, long size, int threads) {
+        long chunk = Math.max(MIN_CHUNK, size / ((long) threads * CHUNKS_PER_THREAD) + 1);
+        int liveLimit = Math.max(2, threads / 2);
+        List<ChunkTask> tasks = new ArrayList<>();
+        for (long pos = 0; pos < size; ) {
+            int w = (int) (pos / WINDOW);
+            int from = (int) (pos % WINDOW);
+            int to = (int) Math.min(Math.min(from + chunk, WINDOW), size - w * WINDOW);
+            ByteBuffer buf = windows.get(w);
+            int before = pos == 0 ? -1 : byteAt(windows, pos - 1) & 0xFF;
+            tasks.add(new ChunkTask(fsm, buf, from, to, before, liveLimit));
+            pos += to - from;
+        }
+        return tasks.toArray(new ChunkTask[0]);
+    }
+
+    /*
+     Where a chunk ends for each state it can start in: starts[i] ends in
+     ends[slot[i]], a slot of -1 means stuck. A chunk that ran from a known
+     state has that one start.*/
+    private static final class Chunk {
+        int[] starts = new int[0];
+        int[] slot = new int[0];
+        int[] ends = new int[0];
+        int[] index;           // state -> position in starts, null for a single start
+        boolean abandoned;
+
+        int end(int state) {
+            int i;
+            if (index == null) {
+                i = starts.length == 1 && starts[0] == state ? 0 : -1;
+            } else {
+                i = index[state];
+            }
+            return i < 0 || slot[i] < 0 ? CompiledFSM.NONE : ends[slot[i]];
+        }
+    }
+
+    private static final class ChunkTask extends RecursiveTask<Chunk> {
+        private final CompiledFSM fsm;
+        private final ByteBuffer buf;
+        private final int from;
+        private final int to;
+        private final int before;     // byte before the chunk, -1 for the first chunk
+        private final int liveLimit;  // average live paths per byte above which speculation stops
+
+        ChunkTask(CompiledFSM fsm, ByteBuffer buf, int from, int to, int before, int liveLimit) {
+            this.fsm = fsm;
+            this.buf = buf;
+            this.from = from;
+            this.to = to;
+            this.before = before;
+            this.liveLimit = liveLimit;
+        }
+
+        @Override
+        protected Chunk compute() {
+            Chunk c = new Chunk();
+            if (before < 0) {
+                c.starts = new int[]{fsm.initial};
+                c.slot = new int[]{0};
+                c.ends = new int[]{fsm.run(fsm.initial, buf, from, to)};
+                return c;
+            }
+            int sym = CompiledFSM.symbolIndex((char) before);
+            if (sym < 0) return c; // the input is stuck before this chunk, no state can start it
+
+            final int[] t = fsm.table;
+            int n = fsm.stateCount();
+            int[] seen = new int[n];   // epoch in which a state was last reached
+            int[] slotOf = new int[n]; // its slot in that epoch
+            int epoch = 1;
+
+            // Start states: the distinct targets of the byte before the chunk, one path each
+            int[] live = new int[n];
+            int k = 0;
+            for (int s = 0; s < n; s++) {
+                int target = t[s * CompiledFSM.ALPHABET + sym];
+                if (target != CompiledFSM.NONE && seen[target] != epoch) {
+                    seen[target] = epoch;
+                    live[k++] = target;
+                }
+            }
+            c.starts = Arrays.copyOf(live, k);
+            c.slot = new int[k];
+            for (int i = 0; i < k; i++) c.slot[i] = i;
+            c.index = new int[n];
+            Arrays.fill(c.index, -1);
+            for (int i = 0; i < k; i++) c.index[c.starts[i]] = i;
+
+            // Step all live paths together until at most one is left
+            int[] remap = new int[k];
+            long work = 0;
+            int i = from;
+            for (; i < to && k > 1; i++) {
+                sym = CompiledFSM.symbolIndex((char) (buf.get(i) & 0xFF));
+                if (sym < 0) {
+                    k = 0;
+                    Arrays.fill(c.slot, -1);
+                    break;
+                }
+                epoch++;
+                int next = 0;
+                boolean merged = false;
+                for (int j = 0; j < k; j++) {
+                    int target = t[live[j] * CompiledFSM.ALPHABET + sym];
+                    if (target == CompiledFSM.NONE) {
+                        remap[j] = -1;
+                        merged = true;
+                    } else if (seen[target] == epoch) {
+                        remap[j] = slotOf[target];
+                        merged = true;
+                    } else {
+                        seen[target] = epoch;
+                        slotOf[target] = next;
+                        remap[j] = next;
+                        live[next++] = target; // next <= j, so no unread path is overwritten
+                    }
+                }
+                if (merged) {
+                    for (int s = 0; s < c.slot.length; s++) {
+                        if (c.slot[s] >= 0) c.slot[s] = remap[c.slot[s]];
+                    }
+                }
+                k = next;
+                work += k;
+                if (work > (long) (i - from + SLACK) * liveLimit) {
+                    c.abandoned = true;
+                    return c;
+                }
+            }
+
+            // One path left runs like run(), none left means every start gets stuck
+            if (k == 1) live[0] = fsm.run(live[0], buf, i, to);
+            c.ends = Arrays.copyOf(live, k);
+            return c;
+        }
+    }
+}
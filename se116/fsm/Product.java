@@ -0,0 +1,262 @@
+package se116.fsm;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/*
+ Product construction for INTERSECT, UNION, COMPLEMENT, EQUIVALENT and INCLUDED.
+ Only product states reachable from the pair of initial states are created.
+ A pair of state ids, NONE standing for the implicit dead state behind a
+ missing transition, is packed into one long and numbered through an open
+ addressing long -> int table; the numbers are handed out in BFS order, so
+ they are the queue as well. EQUIVALENT and INCLUDED never build a table and
+ stop at the first pair that tells the machines apart, which by BFS order
+ gives a shortest counterexample.
+ Both machines must be deterministic. The input symbols are the
+ single-character symbols declared in either machine.*/
+final class Product {
+    enum Op {
+        INTERSECT,
+        UNION,
+        COMPLEMENT // of the first machine alone, over its declared symbols
+    }
+
+    // Machine built by combine() and what MINIMIZE-style reporting needs
+    static final class Result {
+        CompiledFSM fsm;
+        int states;
+        int droppedExtra; // transitions on multi-character symbols, not part of the executable language
+    }
+
+    // Outcome of compare()
+    static final class Difference {
+        boolean equal;
+        String counterexample;  // shortest input accepted by exactly one machine, null if equal
+        boolean acceptedByFirst;
+    }
+
+    private Product() {
+    }
+
+    /*
+     Builds the reachable part of the product. b is ignored for COMPLEMENT, which
+     keeps the state names of a and adds a sink state for missing transitions.*/
+    static Result combine(CompiledFSM a, CompiledFSM b, Op op, long version) {
+        boolean complement = op == Op.COMPLEMENT;
+        String[] symbolNames = complement ? singleSymbols(a, null) : singleSymbols(a, b);
+        int[] cols = columns(symbolNames);
+        Result result = new Result();
+        result.droppedExtra = a.extra.length / 3 + (complement ? 0 : b.extra.length / 3);
+
+        Pairs pairs = new Pairs();
+        int[] table = new int[0];
+        boolean[] finals = new boolean[0];
+        int ia = a.initial;
+        int ib = complement ? CompiledFSM.NONE : b.initial;
+        int initial = live(op, ia, ib) ? pairs.id(ia, ib) : CompiledFSM.NONE;
+
+        for (int id = 0; id < pairs.size; id++) {
+            int sa = pairs.first[id];
+            int sb = pairs.second[id];
+            if (table.length < pairs.capacity() * CompiledFSM.ALPHABET) {
+                int old = table.length;
+                table = Arrays.copyOf(table, pairs.capacity() * CompiledFSM.ALPHABET);
+                finals = Arrays.copyOf(finals, pairs.capacity());
+                Arrays.fill(table, old, table.length, CompiledFSM.NONE);
+            }
+            finals[id] = accepting(op, a, b, sa, sb);
+            int base = id * CompiledFSM.ALPHABET;
+            for (int c : cols) {
+                int ta = sa == CompiledFSM.NONE ? CompiledFSM.NONE : a.step(sa, c);
+                int tb = sb == CompiledFSM.NONE ? CompiledFSM.NONE : b.step(sb, c);
+                if (live(op, ta, tb)) table[base + c] = pairs.id(ta, tb);
+            }
+        }
+
+        int n = pairs.size;
+        String[] names = new String[n];
+        if (complement) {
+            Set<String> taken = new LinkedHashSet<>();
+            for (int id = 0; id < n; id++) {
+                if (pairs.first[id] != CompiledFSM.NONE) taken.add(a.stateName(pairs.first[id]));
+            }
+            String sink = "DEAD";
+            for (int i = 1; taken.contains(sink); i++) sink = "DEAD" + i;
+            for (int id = 0; id < n; id++) {
+                names[id] = pairs.first[id] == CompiledFSM.NONE ? sink : a.stateName(pairs.first[id]);
+            }
+        } else {
+            for (int id = 0; id < n; id++) names[id] = "P" + id;
+        }
+        result.states = n;
+        result.fsm = new CompiledFSM(version, symbolNames, names, null, null,
+                Arrays.copyOf(table, n * CompiledFSM.ALPHABET), Arrays.copyOf(finals, n), initial,
+                new int[0], new int[0]);
+        return result;
+    }
+
+    /*
+     Searches for a shortest input on which the machines differ. With inclusion
+     only inputs accepted by a and rejected by b count, i.e. it checks L(a) ⊆ L(b).*/
+    static Difference compare(CompiledFSM a, CompiledFSM b, boolean inclusion) {
+        int[] cols = columns(singleSymbols(a, b));
+        Difference difference = new Difference();
+        Pairs pairs = new Pairs();
+        int[] parent = new int[16];
+        byte[] via = new byte[16];
+
+        if (a.initial != CompiledFSM.NONE || b.initial != CompiledFSM.NONE) pairs.id(a.initial, b.initial);
+        for (int id = 0; id < pairs.size; id++) {
+            int sa = pairs.first[id];
+            int sb = pairs.second[id];
+            boolean fa = sa != CompiledFSM.NONE && a.finals[sa];
+            boolean fb = sb != CompiledFSM.NONE && b.finals[sb];
+            if (fa != fb && (fa || !inclusion)) {
+                difference.counterexample = path(parent, via, id);
+                difference.acceptedByFirst = fa;
+                return difference;
+            }
+            for (int c : cols) {
+                int ta = sa == CompiledFSM.NONE ? CompiledFSM.NONE : a.step(sa, c);
+                int tb = sb == CompiledFSM.NONE ? CompiledFSM.NONE : b.step(sb, c);
+                // Both dead: nothing beyond can be accepted by either machine
+                if (ta == CompiledFSM.NONE && tb == CompiledFSM.NONE) continue;
+                // For inclusion nothing is accepted by a once it is dead
+                if (inclusion && ta == CompiledFSM.NONE) continue;
+                int size = pairs.size;
+                int next = pairs.id(ta, tb);
+                if (next == size) {
+                    if (size == parent.length) {
+                        parent = Arrays.copyOf(parent, pairs.capacity());
+                        via = Arrays.copyOf(via, pairs.capacity());
+                    }
+                    parent[next] = id;
+                    via[next] = (byte) c;
+                }
+            }
+        }
+        difference.equal = true;
+        return difference;
+    }
+
+    // The input that leads from the initial pair to pair `id`
+    private static String path(int[] parent, byte[] via, int id) {
+        StringBuilder input = new StringBuilder();
+        for (int p = id; p != 0; p = parent[p]) input.append(symbol(via[p]));
+        return input.reverse().toString();
+    }
+
+    private static boolean accepting(Op op, CompiledFSM a, CompiledFSM b, int sa, int sb) {
+        boolean fa = sa != CompiledFSM.NONE && a.finals[sa];
+        switch (op) {
+            case INTERSECT:
+                return fa && sb != CompiledFSM.NONE && b.finals[sb];
+            case UNION:
+                return fa || sb != CompiledFSM.NONE && b.finals[sb];
+            default:
+                return !fa;
+        }
+    }
+
+    // False for pairs that are left out because they are dead: missing transition
+    private static boolean live(Op op, int ta, int tb) {
+        switch (op) {
+            case INTERSECT:
+                return ta != CompiledFSM.NONE && tb != CompiledFSM.NONE;
+            case UNION:
+                return ta != CompiledFSM.NONE || tb != CompiledFSM.NONE;
+            default:
+                return true; // the complement of the dead state accepts, it is kept as the sink
+        }
+    }
+
+    // Single-character symbols of a, then those of b that a does not have
+    private static String[] singleSymbols(CompiledFSM a, CompiledFSM b) {
+        Set<String> symbols = new LinkedHashSet<>();
+        for (String s : a.symbolNames) {
+            if (s.length() == 1 && CompiledFSM.symbolIndex(s.charAt(0)) >= 0) symbols.add(s);
+        }
+        if (b != null) {
+            for (String s : b.symbolNames) {
+                if (s.length() == 1 && CompiledFSM.symbolIndex(s.charAt(0)) >= 0) symbols.add(s);
+            }
+        }
+        return symbols.toArray(new String[0]);
+    }
+
+    private static int[] columns(String[] symbols) {
+        int[] cols = new int[symbols.length];
+        for (int i = 0; i < symbols.length; i++) cols[i] = CompiledFSM.symbolIndex(symbols[i].charAt(0));
+        return cols;
+    }
+
+    private static char symbol(int index) {
+        return (char) (index < 10 ? '0' + index : 'A' + index - 10);
+    }
+
+    /*
+     Numbers state pairs in the order they are first seen. Open addressing over
+     long keys, (a + 1) << 32 | (b + 1) so that NONE packs to 0.*/
+    private static final class Pairs {
+        private static final long EMPTY = -1;
+
+        private long[] keys = new long[64];
+        private int[] ids = new int[64];
+        int[] first = new int[16];
+        int[] second = new int[16];
+        int size;
+
+        Pairs() {
+            Arrays.fill(keys, EMPTY);
+        }
+
+        int capacity() {
+            return first.length;
+        }
+
+        /*
+         Number of the pair, a new one (== size before the call) if it was not seen yet*/
+        int id(int a, int b) {
+            long key = (long) (a + 1) << 32 | (b + 1);
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            long k;
+            while ((k = keys[slot]) != EMPTY) {
+                if (k == key) return ids[slot];
+                slot = (slot + 1) & mask;
+            }
+            int id = size++;
+            keys[slot] = key;
+            ids[slot] = id;
+            if (id == first.length) {
+                first = Arrays.copyOf(first, id * 2);
+                second = Arrays.copyOf(second, id * 2);
+            }
+            first[id] = a;
+            second[id] = b;
+            if (size * 2 > keys.length) rehash();
+            return id;
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldIds = ids;
+            keys = new long[oldKeys.length * 2];
+            ids = new int[keys.length];
+            Arrays.fill(keys, EMPTY);
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) continue;
+                int slot = mix(oldKeys[i]) & mask;
+                while (keys[slot] != EMPTY) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+
+        private static int mix(long key) {
+            return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+        }
+    }
+}
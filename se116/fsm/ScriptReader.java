@@ -0,0 +1,82 @@
+package se116.fsm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/*
+ Character reader for script mode.
+ The file is read through a FileChannel into one direct byte buffer and
+ decoded as UTF-8 into one reusable char buffer, so memory stays constant
+ however large the script is and nothing is allocated per line or per char.*/
+final class ScriptReader implements Closeable {
+    static final int EOF = -1;
+    private static final int BUFFER = 1 << 20;
+
+    private final FileChannel channel;
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER);
+    private final CharBuffer chars = CharBuffer.allocate(BUFFER);
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private boolean endOfFile;
+    private boolean decoded; // every byte of the file has been decoded
+
+    ScriptReader(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        chars.flip(); // empty until the first fill
+    }
+
+    /*
+     Next char, or EOF*/
+    int read() throws IOException {
+        if (!chars.hasRemaining() && !fill()) return EOF;
+        return chars.get();
+    }
+
+    /*
+     Puts back the char returned by the last read()*/
+    void unread() {
+        chars.position(chars.position() - 1);
+    }
+
+    /*
+     Reads the rest of the current line into `line`, without the line break*/
+    int readLine(StringBuilder line) throws IOException {
+        int c;
+        while ((c = read()) != EOF && c != '\n') line.append((char) c);
+        return c;
+    }
+
+    private boolean fill() throws IOException {
+        chars.clear();
+        while (!decoded) {
+            if (!endOfFile && channel.read(bytes) < 0) endOfFile = true;
+            bytes.flip();
+            CoderResult result = decoder.decode(bytes, chars, endOfFile);
+            bytes.compact();
+            if (result.isOverflow()) break; // chars full, the rest is decoded by the next fill
+            if (endOfFile) {
+                decoder.flush(chars);
+                decoded = true;
+            } else if (chars.position() > 0) {
+                break;
+            }
+        }
+        chars.flip();
+        return chars.hasRemaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
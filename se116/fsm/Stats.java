@@ -0,0 +1,221 @@
+package se116.fsm;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+ Instrumentation behind the STATS command.
+ Per command type: a count and a latency histogram with four sub-buckets per
+ power of two of nanoseconds, so percentiles are within 25% without storing
+ samples. Per state of the executed machine: visits, and per table entry the
+ number of times the transition was taken. Plus accepted and rejected inputs.
+ Only exists while STATS is ON; the processor checks for null, so collection
+ costs nothing when it is off. Used from the REPL thread.*/
+final class Stats {
+    private static final int BUCKETS = 256;
+    private static final int TOP = 10; // rows of the hot state and dead transition lists on the console
+
+    private final LocalDateTime started = LocalDateTime.now();
+    // Command types with their own row, the processor's commands; everything else is counted as OTHER
+    private final String[] commands;
+    private final Map<String, Integer> commandIndex;
+    private final long[] count;
+    private final long[] totalNanos;
+    private final long[] maxNanos;
+    private final long[][] histogram;
+
+    private long accepted;
+    private long rejected;
+
+    // Visit and transition counts of the machine that was executed last
+    private CompiledFSM tracked;
+    private long[] visits = new long[0];
+    private long[] taken = new long[0];
+
+    Stats(Collection<String> commandNames) {
+        commands = commandNames.toArray(new String[commandNames.size() + 1]);
+        commands[commands.length - 1] = "OTHER";
+        commandIndex = new HashMap<>(commands.length * 2);
+        for (int i = 0; i < commands.length; i++) commandIndex.put(commands[i], i);
+        count = new long[commands.length];
+        totalNanos = new long[commands.length];
+        maxNanos = new long[commands.length];
+        histogram = new long[commands.length][BUCKETS];
+    }
+
+    void command(String command, long nanos) {
+        int c = commandIndex.getOrDefault(command, commands.length - 1);
+        count[c]++;
+        totalNanos[c] += nanos;
+        if (nanos > maxNanos[c]) maxNanos[c] = nanos;
+        histogram[c][bucket(nanos)]++;
+    }
+
+    void result(boolean accept) {
+        if (accept) accepted++;
+        else rejected++;
+    }
+
+    void results(long accept, long reject) {
+        accepted += accept;
+        rejected += reject;
+    }
+
+    /*
+     Counts the states visited and transitions taken by one deterministic run,
+     up to the end of the input or the first missing transition*/
+    void execute(CompiledFSM fsm, CharSequence input) {
+        track(fsm);
+        long[] v = visits;
+        long[] k = taken;
+        int s = fsm.initial;
+        v[s]++;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            int c = CompiledFSM.symbolIndex(input.charAt(i));
+            int t = fsm.step(s, c);
+            if (t == CompiledFSM.NONE) return;
+            k[s * CompiledFSM.ALPHABET + c]++;
+            v[t]++;
+            s = t;
+        }
+    }
+
+    /*
+     Switches the counters to a new snapshot. Counts collected on the previous
+     one are carried over by state name, so edits do not lose them.*/
+    private void track(CompiledFSM fsm) {
+        if (fsm == tracked) return;
+        int n = fsm.stateCount();
+        long[] v = new long[n];
+        long[] k = new long[n * CompiledFSM.ALPHABET];
+        CompiledFSM old = tracked;
+        if (old != null && old.stateCount() > 0) {
+            Map<String, Integer> ids = new HashMap<>(n * 2);
+            for (int s = 0; s < n; s++) ids.put(fsm.stateName(s), s);
+            for (int s = 0; s < old.stateCount(); s++) {
+                boolean used = visits[s] != 0;
+                for (int c = 0; c < CompiledFSM.ALPHABET && !used; c++) used = taken[s * CompiledFSM.ALPHABET + c] != 0;
+                if (!used) continue;
+                Integer id = ids.get(old.stateName(s));
+                if (id == null) continue;
+                v[id] += visits[s];
+                for (int c = 0; c < CompiledFSM.ALPHABET; c++) {
+                    if (fsm.step(id, c) != CompiledFSM.NONE) {
+                        k[id * CompiledFSM.ALPHABET + c] += taken[s * CompiledFSM.ALPHABET + c];
+                    }
+                }
+            }
+        }
+        tracked = fsm;
+        visits = v;
+        taken = k;
+    }
+
+    /*
+     Writes the report. On the console (full == false) the state and transition
+     lists are cut to the top entries, an export lists all of them.*/
+    void report(OutputSink o, boolean full) {
+        o.append("Statistics since ").append(started.toString()).line();
+        o.line("Commands:");
+        o.line(" command          count   mean us    p50 us    p99 us    max us");
+        for (int c = 0; c < commands.length; c++) {
+            if (count[c] == 0) continue;
+            o.append(' ');
+            pad(o, commands[c], 14, false);
+            pad(o, Long.toString(count[c]), 9, true);
+            pad(o, micros(totalNanos[c] / count[c]), 10, true);
+            // A bucket is reported by its upper bound, which may be above the largest sample
+            pad(o, micros(Math.min(percentile(histogram[c], count[c], 0.50), maxNanos[c])), 10, true);
+            pad(o, micros(Math.min(percentile(histogram[c], count[c], 0.99), maxNanos[c])), 10, true);
+            pad(o, micros(maxNanos[c]), 10, true);
+            o.line();
+        }
+        o.append("Executions: ").append(accepted).append(" YES, ").append(rejected).append(" NO").line();
+
+        CompiledFSM fsm = tracked;
+        if (fsm == null) return;
+        int n = fsm.stateCount();
+
+        // States by visits, most visited first
+        Integer[] order = new Integer[n];
+        int used = 0;
+        for (int s = 0; s < n; s++) {
+            if (visits[s] != 0) order[used++] = s;
+        }
+        Arrays.sort(order, 0, used, (a, b) -> Long.compare(visits[b], visits[a]));
+        int shown = full ? used : Math.min(used, TOP);
+        o.append("State visits (").append(used).append(" of ").append(n).append(" states visited):").line();
+        for (int i = 0; i < shown; i++) {
+            o.append(" - ").append(fsm.stateName(order[i])).append(' ').append(visits[order[i]]).line();
+        }
+
+        // Transitions of the table that no execution has taken
+        long dead = 0;
+        o.line("Transitions never taken:");
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < CompiledFSM.ALPHABET; c++) {
+                int t = fsm.step(s, c);
+                if (t == CompiledFSM.NONE || taken[s * CompiledFSM.ALPHABET + c] != 0) continue;
+                if (full || dead < TOP) {
+                    o.append(" - ").append(fsm.stateName(s)).append(" -").append(symbol(c))
+                            .append("-> ").append(fsm.stateName(t)).line();
+                }
+                dead++;
+            }
+        }
+        if (!full && dead > TOP) o.append(" ... ").append(dead - TOP).append(" more").line();
+        if (full) {
+            o.line("Transitions taken:");
+            for (int s = 0; s < n; s++) {
+                for (int c = 0; c < CompiledFSM.ALPHABET; c++) {
+                    long k = taken[s * CompiledFSM.ALPHABET + c];
+                    if (k == 0) continue;
+                    o.append(" - ").append(fsm.stateName(s)).append(" -").append(symbol(c))
+                            .append("-> ").append(fsm.stateName(fsm.step(s, c))).append(' ').append(k).line();
+                }
+            }
+        }
+    }
+
+    // Histogram bucket: values below 4 exactly, then 4 sub-buckets per power of two
+    static int bucket(long nanos) {
+        if (nanos < 4) return (int) Math.max(nanos, 0);
+        int log = 63 - Long.numberOfLeadingZeros(nanos);
+        return (log - 1) * 4 + (int) ((nanos >>> (log - 2)) & 3);
+    }
+
+    // Largest value that falls into a bucket
+    static long bucketMax(int bucket) {
+        if (bucket < 4) return bucket;
+        int log = bucket / 4 + 1;
+        long low = (4L + bucket % 4) << (log - 2);
+        return low + (1L << (log - 2)) - 1;
+    }
+
+    private static long percentile(long[] histogram, long count, double p) {
+        long rank = (long) Math.ceil(count * p);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += histogram[b];
+            if (seen >= rank) return bucketMax(b);
+        }
+        return bucketMax(BUCKETS - 1);
+    }
+
+    private static char symbol(int index) {
+        return (char) (index < 10 ? '0' + index : 'A' + index - 10);
+    }
+
+    private static String micros(long nanos) {
+        return String.format("%.1f", nanos / 1000.0);
+    }
+
+    private static void pad(OutputSink o, String s, int width, boolean right) {
+        if (right) for (int i = s.length(); i < width; i++) o.append(' ');
+        o.append(s);
+        if (!right) for (int i = s.length(); i < width; i++) o.append(' ');
+    }
+}
@@ -0,0 +1,157 @@
+package se116.fsm;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/*
+ Maps symbol names to their dense ids (positions in the declaration order)
+ through a perfect hash built once per symbol set: every name owns its own
+ slot, so a lookup is one hash over the token's chars, one slot load and one
+ comparison that rejects names that are not symbols. Case-insensitive like
+ the REPL, nothing is allocated per lookup.
+ Built by hash and displace: names are grouped into small buckets by one part
+ of their hash; from the largest bucket down, each bucket gets the first
+ displacement that moves all of its names into free slots.*/
+final class SymbolTable {
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    private static final int ATTEMPTS = 8; // seeds tried, the table doubles every second one
+
+    private final byte[] text;        // all names back to back, ASCII
+    private final int[] offsets;      // id -> start of its name in text, offsets[id + 1] is the end
+    private final int[] displacement; // per bucket
+    private final int[] slots;        // symbol id or -1
+    private final int bucketMask;
+    private final int slotMask;
+    private final long seed;          // of the hash that placed every name
+
+    /*
+     Names must be distinct upper-case ASCII, IllegalArgumentException otherwise:
+     two equal names always hash alike and no displacement could separate them.
+     Non-ASCII characters in a lookup never match, as text only holds ASCII.*/
+    SymbolTable(String[] names) {
+        int n = names.length;
+        Set<String> distinct = new HashSet<>(n * 2);
+        offsets = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < names[i].length(); j++) {
+                if (names[i].charAt(j) >= 128) throw new IllegalArgumentException("symbol '" + names[i] + "' is not ASCII");
+            }
+            if (!distinct.add(names[i])) throw new IllegalArgumentException("duplicate symbol '" + names[i] + "'");
+            offsets[i + 1] = offsets[i] + names[i].length();
+        }
+        text = new byte[offsets[n]];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < names[i].length(); j++) text[offsets[i] + j] = (byte) names[i].charAt(j);
+        }
+
+        int buckets = Integer.highestOneBit(Math.max(1, n / 3)) * 2;
+        int size = Integer.highestOneBit(Math.max(2, n + n / 4)) * 2; // load factor at most 0.8
+        long[] hashes = new long[n];
+        int[] table;
+        int[] disp;
+        long hashSeed;
+        for (int attempt = 0; ; attempt++) {
+            // Distinct names fit at the first attempt in practice; a new seed gives other hashes
+            if (attempt == ATTEMPTS) throw new IllegalStateException("no perfect hash found for " + n + " symbols");
+            hashSeed = attempt * GOLDEN;
+            for (int i = 0; i < n; i++) hashes[i] = hash(names[i], 0, names[i].length(), hashSeed);
+            table = new int[size];
+            disp = new int[buckets];
+            if (place(hashes, buckets, size, table, disp)) break;
+            if (attempt % 2 == 1 && size < 1 << 30) size *= 2;
+        }
+        this.displacement = disp;
+        this.slots = table;
+        this.bucketMask = buckets - 1;
+        this.slotMask = size - 1;
+        this.seed = hashSeed;
+    }
+
+    /*
+     Id of the name in s[from, to), -1 if it is not a symbol*/
+    int find(CharSequence s, int from, int to) {
+        if (offsets.length == 1) return -1;
+        long h = hash(s, from, to, seed);
+        int id = slots[slot(h, displacement[bucket(h, bucketMask)], slotMask)];
+        if (id < 0) return -1;
+        int start = offsets[id];
+        if (offsets[id + 1] - start != to - from) return -1;
+        for (int i = from; i < to; i++) {
+            if (text[start++] != upper(s.charAt(i))) return -1;
+        }
+        return id;
+    }
+
+    // Finds a displacement for every bucket, false if some bucket does not fit
+    private static boolean place(long[] hashes, int buckets, int size, int[] table, int[] disp) {
+        Arrays.fill(table, -1);
+        int bucketMask = buckets - 1;
+        int slotMask = size - 1;
+
+        // Names of each bucket, CSR style
+        int[] start = new int[buckets + 1];
+        for (long h : hashes) start[bucket(h, bucketMask) + 1]++;
+        for (int b = 0; b < buckets; b++) start[b + 1] += start[b];
+        int[] members = new int[hashes.length];
+        int[] fill = Arrays.copyOf(start, buckets);
+        for (int i = 0; i < hashes.length; i++) members[fill[bucket(hashes[i], bucketMask)]++] = i;
+
+        // Largest buckets first, while most slots are still free
+        Integer[] order = new Integer[buckets];
+        for (int b = 0; b < buckets; b++) order[b] = b;
+        Arrays.sort(order, (a, b) -> (start[b + 1] - start[b]) - (start[a + 1] - start[a]));
+
+        int[] taken = new int[32];
+        for (int b : order) {
+            int from = start[b], to = start[b + 1];
+            if (from == to) continue;
+            if (to - from > taken.length) taken = new int[to - from];
+            int d = 0;
+            search:
+            for (; ; d++) {
+                if (d == 1 << 16) return false;
+                int k = 0;
+                for (int m = from; m < to; m++) {
+                    int s = slot(hashes[members[m]], d, slotMask);
+                    if (table[s] != -1) continue search;
+                    for (int j = 0; j < k; j++) {
+                        if (taken[j] == s) continue search;
+                    }
+                    taken[k++] = s;
+                }
+                break;
+            }
+            for (int m = from; m < to; m++) table[taken[m - from]] = members[m];
+            disp[b] = d;
+        }
+        return true;
+    }
+
+    // FNV-1a over the upper-cased chars from a seeded start, then a 64-bit finalizer so all bits are mixed
+    private static long hash(CharSequence s, int from, int to, long seed) {
+        long h = 0xCBF29CE484222325L ^ seed;
+        for (int i = from; i < to; i++) {
+            h = (h ^ upper(s.charAt(i))) * 0x100000001B3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static int bucket(long h, int mask) {
+        return (int) (h >>> 40) & mask;
+    }
+
+    private static int slot(long h, int d, int mask) {
+        long x = h + d * GOLDEN;
+        x ^= x >>> 29;
+        x *= 0xBF58476D1CE4E5B9L;
+        return (int) (x ^ x >>> 32) & mask;
+    }
+
+    private static char upper(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+    }
+}
@@ -0,0 +1,46 @@
+package se116.fsm;
+
+/*
+ One problem found by FSMBuilder.validate(): what kind it is, the name it is
+ about and a readable message. The messages use the wording of the REPL.*/
+public final class ValidationError {
+    public enum Kind {
+        INVALID_SYMBOL,     // not alphanumeric, or EPSILON
+        DUPLICATE_SYMBOL,
+        INVALID_STATE,      // not alphanumeric
+        DUPLICATE_STATE,
+        UNKNOWN_STATE,      // used by INITIAL-STATE, FINAL-STATES or a transition but not declared
+        UNKNOWN_SYMBOL,     // used by a transition but not declared
+        NO_INITIAL_STATE,   // no states at all
+        NONDETERMINISTIC    // second target or epsilon move without nondeterministic(true)
+    }
+
+    private final Kind kind;
+    private final String subject;
+    private final String message;
+
+    ValidationError(Kind kind, String subject, String message) {
+        this.kind = kind;
+        this.subject = subject;
+        this.message = message;
+    }
+
+    public Kind kind() {
+        return kind;
+    }
+
+    /*
+     The symbol, state or transition ("FROM SYMBOL TO") the error is about*/
+    public String subject() {
+        return subject;
+    }
+
+    public String message() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return kind + ": " + message;
+    }
+}
@@ -0,0 +1,85 @@
+package se116.fsm;
+
+import java.util.Set;
+
+/*
+ The rules for names and transitions, shared by FSMBuilder and the REPL so the
+ two can not drift apart. Names are passed upper-cased. Every check returns the
+ ValidationError, or null when there is nothing wrong; what happens then
+ (refusing, adding the state anyway, overwriting) is up to the caller.*/
+final class Validator {
+    private Validator() {
+    }
+
+    /*
+     A symbol to declare; declared are the symbols so far*/
+    static ValidationError symbol(String name, Set<String> declared) {
+        if (!CommandTokenizer.isAlphanumeric(name)) {
+            return new ValidationError(ValidationError.Kind.INVALID_SYMBOL, name,
+                    "invalid symbol '" + name + "' (must be alphanumeric)");
+        }
+        if (name.equals(CompiledFSM.EPSILON_NAME)) {
+            return new ValidationError(ValidationError.Kind.INVALID_SYMBOL, name,
+                    "invalid symbol '" + name + "' (reserved for epsilon moves)");
+        }
+        if (declared.contains(name)) {
+            return new ValidationError(ValidationError.Kind.DUPLICATE_SYMBOL, name,
+                    "symbol '" + name + "' was already declared");
+        }
+        return null;
+    }
+
+    /*
+     A state to declare; declared are the states so far*/
+    static ValidationError state(String name, Set<String> declared) {
+        if (!CommandTokenizer.isAlphanumeric(name)) {
+            return new ValidationError(ValidationError.Kind.INVALID_STATE, name,
+                    "invalid state '" + name + "' (must be alphanumeric)");
+        }
+        if (declared.contains(name)) {
+            return new ValidationError(ValidationError.Kind.DUPLICATE_STATE, name,
+                    "state '" + name + "' was already declared");
+        }
+        return null;
+    }
+
+    /*
+     A state used as initial, final, source or destination state (the role)*/
+    static ValidationError knownState(String name, Set<String> states, String role) {
+        if (states.contains(name)) return null;
+        return new ValidationError(ValidationError.Kind.UNKNOWN_STATE, name,
+                role + " '" + name + "' not found");
+    }
+
+    /*
+     The symbol of a transition; EPSILON is always known, move() decides about it*/
+    static ValidationError knownSymbol(String name, Set<String> symbols) {
+        if (name.equals(CompiledFSM.EPSILON_NAME) || symbols.contains(name)) return null;
+        return new ValidationError(ValidationError.Kind.UNKNOWN_SYMBOL, name,
+                "symbol '" + name + "' not found");
+    }
+
+    /*
+     Whether a transition is an NFA move kept next to the table: an epsilon move
+     or a second target of a single-character symbol. current is the target the
+     table already has for (from, symbol), null if none. A different target for
+     a multi-character symbol is not, those are always deterministic.*/
+    static boolean nfaMove(String symbol, String current, String to) {
+        return symbol.equals(CompiledFSM.EPSILON_NAME)
+                || (symbol.length() == 1 && current != null && !current.equals(to));
+    }
+
+    /*
+     A transition that does not fit next to the existing one: an NFA move without
+     NFA mode, or a second target of a multi-character symbol. The REPL replaces
+     the old target in those cases, except for epsilon moves*/
+    static ValidationError move(String from, String symbol, String to, String current, boolean nondeterministic) {
+        boolean nfa = nfaMove(symbol, current, to);
+        if (nfa ? nondeterministic : current == null || current.equals(to)) return null;
+        return new ValidationError(ValidationError.Kind.NONDETERMINISTIC, from + " " + symbol + " " + to,
+                symbol.equals(CompiledFSM.EPSILON_NAME)
+                        ? "epsilon moves require a nondeterministic FSM (NFA ON)"
+                        : "transition from '" + from + "' with symbol '" + symbol + "' already goes to '" + current + "'"
+                        + (nondeterministic ? " (multi-character symbols are deterministic)" : ""));
+    }
+}
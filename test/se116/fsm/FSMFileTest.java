@@ -0,0 +1,163 @@
+package se116.fsm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FSMFileTest {
+    private static final int HEADER_BYTES = 28;
+
+    @TempDir
+    Path dir;
+
+    // Two single-character symbols, a token and NFA moves, so every section of the file is used
+    private static CompiledFSM machine() {
+        return CompiledFSM.builder()
+                .nondeterministic(true)
+                .symbols("0", "1", "LOGIN")
+                .states("OUT", "IN", "UP")
+                .initial("OUT")
+                .finals("IN", "UP")
+                .transition("OUT", "LOGIN", "IN")
+                .transition("OUT", "0", "OUT").transition("OUT", "1", "IN")
+                .transition("IN", "1", "UP").transition("IN", "1", "OUT")
+                .transition("UP", CompiledFSM.EPSILON_NAME, "OUT")
+                .build();
+    }
+
+    @Test
+    void readRestoresTheWrittenMachine() throws IOException {
+        Path file = dir.resolve("machine.bin");
+        CompiledFSM fsm = machine();
+        FSMFile.write(fsm, file);
+        CompiledFSM loaded = FSMFile.read(file, 7);
+        Machines.assertSameMachine(fsm, loaded);
+        assertEquals(7, loaded.version);
+        for (String input : Machines.allInputs("01", 8)) assertEquals(fsm.accepts(input), loaded.accepts(input), input);
+    }
+
+    @Test
+    void readRestoresRandomMachines() throws IOException {
+        Random random = new Random(4);
+        Path file = dir.resolve("random.bin");
+        for (int n = 0; n < 50; n++) {
+            CompiledFSM fsm = Machines.random(random, "0123ABCZ", 1 + random.nextInt(100), random.nextDouble());
+            FSMFile.write(fsm, file);
+            Machines.assertSameMachine(fsm, FSMFile.read(file, 1));
+        }
+    }
+
+    @Test
+    void compileAndLoadRestoreTheMachineInTheRepl() {
+        Path file = dir.resolve("repl.bin");
+        CommandProcessor p = processor();
+        p.process("SYMBOLS 0 1 LOGIN");
+        p.process("STATES EVEN ODD");
+        p.process("FINAL-STATES EVEN");
+        p.process("TRANSITIONS 0 EVEN EVEN, 1 EVEN ODD, 0 ODD ODD, 1 ODD EVEN, LOGIN ODD EVEN");
+        CompiledFSM before = p.snapshot();
+        p.process("COMPILE " + file);
+        p.process("CLEAR");
+        assertEquals(0, p.snapshot().stateCount());
+        p.process("LOAD " + file);
+        Machines.assertSameMachine(before, p.snapshot());
+    }
+
+    @Test
+    void rejectsAFileThatIsNoFSM() throws IOException {
+        Path file = dir.resolve("text.bin");
+        Files.writeString(file, "SYMBOLS 0 1; STATES EVEN ODD;");
+        assertRejected(file, "not a compiled FSM file");
+        Files.write(file, new byte[0]);
+        assertRejected(file, "not a compiled FSM file");
+    }
+
+    @Test
+    void rejectsATruncatedFile() throws IOException {
+        byte[] bytes = written();
+        Path file = dir.resolve("damaged.bin");
+        for (int length : new int[]{HEADER_BYTES, HEADER_BYTES + 5, bytes.length / 2, bytes.length - 2}) {
+            Files.write(file, Arrays.copyOf(bytes, length));
+            assertThrows(IOException.class, () -> FSMFile.read(file, 1), length + " bytes");
+        }
+    }
+
+    @Test
+    void rejectsIdsOutOfRange() throws IOException {
+        int states = machine().stateCount();
+        int tableStart = HEADER_BYTES + 4 * (states + 1 + (states + 31) / 32);
+        assertRejected(damaged(b -> b.putInt(16, states)), "initial state id");
+        assertRejected(damaged(b -> b.putInt(tableStart, states)), "transition target");
+        assertRejected(damaged(b -> b.putInt(tableStart + 4, -2)), "transition target");
+        int extraStart = tableStart + 4 * states * CompiledFSM.ALPHABET;
+        assertRejected(damaged(b -> b.putInt(extraStart + 4, 3)), "multi-character symbol");
+        int nfaStart = extraStart + 4 * 3;
+        assertRejected(damaged(b -> b.putInt(nfaStart + 4, CompiledFSM.EPSILON + 1)), "NFA move");
+    }
+
+    @Test
+    void rejectsDamagedNameOffsets() throws IOException {
+        assertRejected(damaged(b -> b.putInt(HEADER_BYTES, 1)), "do not start at offset 0");
+        assertRejected(damaged(b -> b.putInt(HEADER_BYTES + 4, 100)), "out of order");
+        assertRejected(damaged(b -> b.putInt(HEADER_BYTES + 12, 1 << 20)), "damaged");
+    }
+
+    @Test
+    void rejectsInvalidSymbols() throws IOException {
+        byte[] bytes = written();
+        // The first symbol, "0", follows the int sections as length 1 and one byte
+        int first = symbolsStart();
+        assertEquals(1, bytes[first]);
+        assertEquals('0', bytes[first + 2]);
+        assertRejected(damaged(b -> b.put(first + 2, (byte) '1')), "symbol 1");
+        assertRejected(damaged(b -> b.put(first + 2, (byte) 'a')), "not upper case");
+        assertRejected(damaged(b -> b.put(first + 2, (byte) '-')), "symbol 0");
+        assertRejected(damaged(b -> b.put(first, (byte) 0)), "symbol 0");
+    }
+
+    private interface Damage {
+        void apply(ByteBuffer bytes);
+    }
+
+    private byte[] written() throws IOException {
+        Path file = dir.resolve("good.bin");
+        FSMFile.write(machine(), file);
+        return Files.readAllBytes(file);
+    }
+
+    private int symbolsStart() {
+        CompiledFSM fsm = machine();
+        int states = fsm.stateCount();
+        return HEADER_BYTES + 4 * (states + 1 + (states + 31) / 32 + states * CompiledFSM.ALPHABET
+                + fsm.extra.length + fsm.nfa.length);
+    }
+
+    private Path damaged(Damage damage) throws IOException {
+        byte[] bytes = written();
+        damage.apply(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN));
+        Path file = Files.createTempFile(dir, "damaged", ".bin");
+        Files.write(file, bytes);
+        return file;
+    }
+
+    private static void assertRejected(Path file, String reason) {
+        IOException e = assertThrows(IOException.class, () -> FSMFile.read(file, 1));
+        assertTrue(e.getMessage().contains(reason), e.getMessage());
+    }
+
+    private static CommandProcessor processor() {
+        return new CommandProcessor(new OutputSink(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,130 @@
+package se116.fsm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+class JournalTest {
+    private static final List<String> BEFORE = List.of(
+            "SYMBOLS 0 1",
+            "STATES EVEN ODD",
+            "FINAL-STATES EVEN",
+            "TRANSITIONS 0 EVEN EVEN, 1 EVEN ODD, 0 ODD ODD, 1 ODD EVEN");
+    private static final List<String> AFTER = List.of(
+            "SYMBOLS 2",
+            "STATES THIRD",
+            "TRANSITION 2 EVEN THIRD",
+            "TRANSITION 2 THIRD EVEN",
+            "DELETE 1 ODD",
+            "FINAL-STATES THIRD");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoversTheEditsOfAnAbandonedSession() {
+        CommandProcessor crashed = processor();
+        crashed.startJournal(dir.toString());
+        for (String command : BEFORE) crashed.process(command);
+        for (String command : AFTER) crashed.process(command);
+        crashed.commit();
+        // Not closed, as if the process had been killed
+
+        CommandProcessor recovered = processor();
+        recovered.startJournal(dir.toString());
+        Machines.assertSameMachine(crashed.snapshot(), recovered.snapshot());
+        recovered.close();
+    }
+
+    @Test
+    void recoversAfterACheckpointThatWasKilled() throws IOException, InterruptedException {
+        CommandProcessor expected = processor();
+        Journal j = Journal.create(dir, expected.snapshot());
+        for (String command : BEFORE) {
+            expected.process(command);
+            j.append(Journal.COMMAND, command);
+        }
+
+        // The snapshot can not be moved into place, so it is never finished
+        Path blocker = dir.resolve("snapshot-2.fsm");
+        Files.createDirectories(blocker.resolve("in-the-way"));
+        j.checkpoint(expected.snapshot(), false, List.of());
+        IOException failure;
+        while ((failure = j.takeSnapshotFailure()) == null) Thread.sleep(10);
+        assertNotNull(failure);
+
+        for (String command : AFTER) {
+            expected.process(command);
+            j.append(Journal.COMMAND, command);
+        }
+        j.close();
+        Files.delete(blocker.resolve("in-the-way"));
+        Files.delete(blocker);
+        // What a snapshot writer killed halfway leaves behind
+        Path partial = dir.resolve("snapshot-2.fsm.tmp");
+        Files.write(partial, new byte[]{'F', 'S', 'M'});
+
+        CommandProcessor recovered = processor();
+        recovered.startJournal(dir.toString());
+        Machines.assertSameMachine(expected.snapshot(), recovered.snapshot());
+        recovered.close();
+        assertFalse(Files.exists(partial));
+    }
+
+    @Test
+    void recoversFromACompletedCheckpoint() throws IOException {
+        CommandProcessor expected = processor();
+        Journal j = Journal.create(dir, expected.snapshot());
+        for (String command : BEFORE) {
+            expected.process(command);
+            j.append(Journal.COMMAND, command);
+        }
+        j.checkpoint(expected.snapshot(), true, List.of());
+        for (String command : AFTER) {
+            expected.process(command);
+            j.append(Journal.COMMAND, command);
+        }
+        j.close();
+        // The first segment is covered by the snapshot and gone
+        assertFalse(Files.exists(dir.resolve("journal-1.log")));
+
+        CommandProcessor recovered = processor();
+        recovered.startJournal(dir.toString());
+        Machines.assertSameMachine(expected.snapshot(), recovered.snapshot());
+        recovered.close();
+    }
+
+    @Test
+    void dropsATornRecordAtTheEnd() throws IOException {
+        CommandProcessor expected = processor();
+        Journal j = Journal.create(dir, expected.snapshot());
+        for (String command : BEFORE) {
+            expected.process(command);
+            j.append(Journal.COMMAND, command);
+        }
+        j.close();
+        Path segment = dir.resolve("journal-1.log");
+        long intact = Files.size(segment);
+        Files.write(segment, new byte[]{42, 0, 0, 0, 1, 2}, StandardOpenOption.APPEND);
+
+        CommandProcessor recovered = processor();
+        recovered.startJournal(dir.toString());
+        Machines.assertSameMachine(expected.snapshot(), recovered.snapshot());
+        recovered.close();
+        assertEquals(intact, Files.size(segment));
+    }
+
+    private static CommandProcessor processor() {
+        return new CommandProcessor(new OutputSink(OutputStream.nullOutputStream()));
+    }
+}
@@ -0,0 +1,77 @@
+package se116.fsm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+ Random machines and inputs for the tests. Machines are built through the
+ public builder, so they are valid by construction.*/
+final class Machines {
+    private Machines() {
+    }
+
+    /*
+     A deterministic machine over the given single-character symbols; each
+     transition is defined with probability fill, each state is final with
+     probability 1/3*/
+    static CompiledFSM random(Random random, String symbols, int states, double fill) {
+        FSMBuilder b = CompiledFSM.builder();
+        for (char c : symbols.toCharArray()) b.symbols(String.valueOf(c));
+        for (int i = 0; i < states; i++) b.states("S" + i);
+        b.initial("S0");
+        for (int i = 0; i < states; i++) {
+            if (random.nextInt(3) == 0) b.finals("S" + i);
+            for (char c : symbols.toCharArray()) {
+                if (random.nextDouble() < fill) b.transition("S" + i, String.valueOf(c), "S" + random.nextInt(states));
+            }
+        }
+        return b.build();
+    }
+
+    /*
+     Every string over the symbols up to the given length, the empty one first*/
+    static List<String> allInputs(String symbols, int maxLength) {
+        List<String> inputs = new ArrayList<>();
+        inputs.add("");
+        for (int from = 0; from < inputs.size(); from++) {
+            String s = inputs.get(from);
+            if (s.length() == maxLength) break;
+            for (char c : symbols.toCharArray()) inputs.add(s + c);
+        }
+        return inputs;
+    }
+
+    static String randomInput(Random random, String symbols, int length) {
+        StringBuilder s = new StringBuilder(length);
+        for (int i = 0; i < length; i++) s.append(symbols.charAt(random.nextInt(symbols.length())));
+        return s.toString();
+    }
+
+    /*
+     All short inputs and some longer random ones*/
+    static List<String> inputs(Random random, String symbols) {
+        List<String> inputs = allInputs(symbols, 6);
+        for (int i = 0; i < 200; i++) inputs.add(randomInput(random, symbols, 7 + random.nextInt(40)));
+        return inputs;
+    }
+
+    /*
+     Fails unless the machines have the same symbols, states and transitions*/
+    static void assertSameMachine(CompiledFSM expected, CompiledFSM actual) {
+        assertArrayEquals(expected.symbolNames, actual.symbolNames, "symbols");
+        assertEquals(expected.stateCount(), actual.stateCount(), "state count");
+        for (int i = 0; i < expected.stateCount(); i++) {
+            assertEquals(expected.stateName(i), actual.stateName(i), "state " + i);
+        }
+        assertEquals(expected.initial, actual.initial, "initial state");
+        assertArrayEquals(expected.finals, actual.finals, "final states");
+        assertArrayEquals(expected.declared, actual.declared, "declared symbols");
+        assertArrayEquals(expected.table, actual.table, "transitions");
+        assertArrayEquals(expected.extra, actual.extra, "transitions on multi-character symbols");
+        assertArrayEquals(expected.nfa, actual.nfa, "NFA moves");
+    }
+}
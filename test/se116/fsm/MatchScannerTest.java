@@ -0,0 +1,110 @@
+package se116.fsm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MatchScannerTest {
+    private static final int SIZE = 3 << 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void deterministicMatchesEndWhereABruteForceSearchFindsThem() throws IOException {
+        // A B* C
+        CompiledFSM fsm = CompiledFSM.builder()
+                .symbols("A", "B", "C")
+                .states("START", "BS", "END")
+                .finals("END")
+                .transition("START", "A", "BS")
+                .transition("BS", "B", "BS")
+                .transition("BS", "C", "END")
+                .build();
+        check(fsm);
+    }
+
+    @Test
+    void nondeterministicMatchesEndWhereABruteForceSearchFindsThem() throws IOException {
+        // AB, ABC, and CC through an epsilon move
+        CompiledFSM fsm = CompiledFSM.builder()
+                .nondeterministic(true)
+                .symbols("A", "B", "C")
+                .states("START", "S1", "S2", "S3", "S4", "S5", "END")
+                .finals("END")
+                .transition("START", "A", "S1").transition("START", "A", "S2")
+                .transition("S1", "B", "END")
+                .transition("S2", "B", "S3").transition("S3", "C", "END")
+                .transition("START", CompiledFSM.EPSILON_NAME, "S4")
+                .transition("S4", "C", "S5").transition("S5", "C", "END")
+                .build();
+        check(fsm);
+    }
+
+    private void check(CompiledFSM fsm) throws IOException {
+        byte[] input = input(new Random(23));
+        Path file = dir.resolve("input.txt");
+        Files.write(file, input);
+        List<Long> expected = bruteForce(fsm, input);
+        assertTrue(expected.size() > 1000);
+
+        for (int threads = 1; threads <= 3; threads++) {
+            Path out = dir.resolve("matches-" + threads + ".txt");
+            MatchScanner.Summary summary = MatchScanner.scan(fsm, CompiledFSM.DFA_CACHE_STATES, file, out, threads);
+            assertTrue(summary.regions > 1);
+            assertTrue(summary.chained > 0, "the separator-free runs must chain regions");
+            List<Long> ends = new ArrayList<>();
+            for (String line : Files.readAllLines(out)) ends.add(Long.parseLong(line));
+            assertEquals(expected.size(), summary.matches);
+            assertEquals(expected, ends, threads + " threads");
+        }
+    }
+
+    /*
+     Symbols, undeclared symbols and separators, with runs longer than the
+     look-back and no separator across the 1 MB and 2 MB region boundaries*/
+    private static byte[] input(Random random) {
+        byte[] input = new byte[SIZE];
+        String symbols = "ABCX";
+        for (int i = 0; i < SIZE; i++) {
+            input[i] = (byte) (random.nextInt(20) == 0 ? (random.nextBoolean() ? ' ' : '\n')
+                    : symbols.charAt(random.nextInt(symbols.length())));
+        }
+        for (int boundary = 1 << 20; boundary < SIZE; boundary += 1 << 20) {
+            for (int i = boundary - (200 << 10); i < boundary + (200 << 10); i++) {
+                if (input[i] == ' ' || input[i] == '\n') input[i] = 'B';
+            }
+        }
+        return input;
+    }
+
+    // Ends of all non-empty matches, from every start position
+    private static List<Long> bruteForce(CompiledFSM fsm, byte[] input) {
+        LazyDFA dfa = new LazyDFA(fsm, CompiledFSM.DFA_CACHE_STATES);
+        boolean[] end = new boolean[input.length + 1];
+        for (int start = 0; start < input.length; start++) {
+            int state = dfa.start();
+            for (int i = start; i < input.length; i++) {
+                int symbol = CompiledFSM.symbolIndex((char) input[i]);
+                if (symbol < 0) break;
+                state = dfa.step(state, symbol);
+                if (state == LazyDFA.DEAD) break;
+                if (dfa.accepting(state)) end[i + 1] = true;
+            }
+        }
+        List<Long> ends = new ArrayList<>();
+        for (int i = 1; i <= input.length; i++) {
+            if (end[i]) ends.add((long) i);
+        }
+        return ends;
+    }
+}
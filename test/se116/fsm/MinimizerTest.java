@@ -0,0 +1,65 @@
+package se116.fsm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MinimizerTest {
+
+    @Test
+    void preservesTheAcceptedLanguage() {
+        Random random = new Random(116);
+        for (int n = 0; n < 300; n++) {
+            String symbols = n % 2 == 0 ? "01" : "ABC";
+            CompiledFSM fsm = Machines.random(random, symbols, 1 + random.nextInt(12), 0.3 + 0.7 * random.nextDouble());
+            Minimizer.Result result = Minimizer.minimize(fsm, 1);
+            assertTrue(result.after <= result.before);
+            assertEquals(result.after, result.fsm.stateCount());
+            for (String input : Machines.inputs(random, symbols)) {
+                assertEquals(fsm.accepts(input), result.fsm.accepts(input), "machine " + n + ", input '" + input + "'");
+            }
+            // Nothing is left to merge or remove
+            assertEquals(result.after, Minimizer.minimize(result.fsm, 2).after, "machine " + n);
+        }
+    }
+
+    @Test
+    void mergesEquivalentStates() {
+        // Parity with every state doubled: EVEN/EVEN2 and ODD/ODD2 behave the same
+        CompiledFSM fsm = CompiledFSM.builder()
+                .symbols("0", "1")
+                .states("EVEN", "ODD", "EVEN2", "ODD2")
+                .finals("EVEN", "EVEN2")
+                .transition("EVEN", "0", "EVEN2").transition("EVEN", "1", "ODD")
+                .transition("ODD", "0", "ODD2").transition("ODD", "1", "EVEN2")
+                .transition("EVEN2", "0", "EVEN").transition("EVEN2", "1", "ODD2")
+                .transition("ODD2", "0", "ODD").transition("ODD2", "1", "EVEN")
+                .build();
+        Minimizer.Result result = Minimizer.minimize(fsm, 1);
+        assertEquals(2, result.after);
+        assertTrue(result.fsm.accepts("0110"));
+        assertFalse(result.fsm.accepts("0111"));
+    }
+
+    @Test
+    void dropsUnreachableAndDeadStates() {
+        CompiledFSM fsm = CompiledFSM.builder()
+                .symbols("A")
+                .states("START", "END", "LOST", "TRAP")
+                .finals("END", "LOST")
+                .transition("START", "A", "END")
+                .transition("END", "A", "TRAP")
+                .transition("TRAP", "A", "TRAP")
+                .build();
+        Minimizer.Result result = Minimizer.minimize(fsm, 1);
+        assertEquals(1, result.unreachable);
+        assertEquals(1, result.dead);
+        assertEquals(2, result.after);
+        assertTrue(result.fsm.accepts("A"));
+        assertFalse(result.fsm.accepts("AA"));
+    }
+}
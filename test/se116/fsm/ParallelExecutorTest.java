@@ -0,0 +1,79 @@
+package se116.fsm;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelExecutorTest {
+    // Large enough to be cut into several chunks of at least 1 MB
+    private static final int SIZE = 5 << 20;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void endsInTheSameStateAsASequentialRun() throws IOException {
+        Random random = new Random(20);
+        for (int n = 0; n < 6; n++) {
+            CompiledFSM fsm = Machines.random(random, "012", 2 + random.nextInt(30), 1.0);
+            byte[] input = input(random, "012", SIZE);
+            Path file = write(input, n % 2 == 0 ? "" : "\n");
+            int expected = fsm.run(ByteBuffer.wrap(input), 0, input.length);
+            for (int threads = 2; threads <= 4; threads++) {
+                ParallelExecutor.Result result = ParallelExecutor.run(fsm, file, threads);
+                assertTrue(result.chunks > 1, "the input must be split");
+                assertEquals(input.length, result.symbols);
+                assertEquals(expected, result.end, "machine " + n + ", " + threads + " threads");
+            }
+        }
+    }
+
+    @Test
+    void getsStuckLikeASequentialRun() throws IOException {
+        // Stuck on two B's in a row
+        CompiledFSM fsm = CompiledFSM.builder()
+                .symbols("A", "B")
+                .states("S0", "S1")
+                .transition("S0", "A", "S0").transition("S0", "B", "S1").transition("S1", "A", "S0")
+                .build();
+        Random random = new Random(21);
+        byte[] input = new byte[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            input[i] = (byte) (i > 0 && input[i - 1] == 'B' || random.nextBoolean() ? 'A' : 'B');
+        }
+        Path file = write(input, "");
+        int end = fsm.run(ByteBuffer.wrap(input), 0, input.length);
+        assertNotEquals(CompiledFSM.NONE, end);
+        assertEquals(end, ParallelExecutor.run(fsm, file, 3).end);
+
+        // Far behind the first chunk
+        input[SIZE - SIZE / 4] = 'B';
+        input[SIZE - SIZE / 4 + 1] = 'B';
+        file = write(input, "");
+        assertEquals(CompiledFSM.NONE, fsm.run(ByteBuffer.wrap(input), 0, input.length));
+        assertEquals(CompiledFSM.NONE, ParallelExecutor.run(fsm, file, 3).end);
+    }
+
+    private static byte[] input(Random random, String symbols, int size) {
+        byte[] input = new byte[size];
+        for (int i = 0; i < size; i++) input[i] = (byte) symbols.charAt(random.nextInt(symbols.length()));
+        return input;
+    }
+
+    private Path write(byte[] input, String lineBreak) throws IOException {
+        Path file = Files.createTempFile(dir, "input", ".txt");
+        Files.write(file, input);
+        Files.writeString(file, lineBreak, StandardOpenOption.APPEND);
+        return file;
+    }
+}
@@ -0,0 +1,77 @@
+package se116.fsm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ProductTest {
+    private static final int MACHINES = 200;
+
+    @Test
+    void intersectAcceptsWhatBothAccept() {
+        Random random = new Random(17);
+        for (int n = 0; n < MACHINES; n++) {
+            CompiledFSM a = Machines.random(random, "ABC", 1 + random.nextInt(8), 0.8);
+            CompiledFSM b = Machines.random(random, "BCD", 1 + random.nextInt(8), 0.8);
+            CompiledFSM product = Product.combine(a, b, Product.Op.INTERSECT, 1).fsm;
+            for (String input : Machines.inputs(random, "ABCD")) {
+                assertEquals(a.accepts(input) && b.accepts(input), product.accepts(input),
+                        "pair " + n + ", input '" + input + "'");
+            }
+        }
+    }
+
+    @Test
+    void unionAcceptsWhatEitherAccepts() {
+        Random random = new Random(18);
+        for (int n = 0; n < MACHINES; n++) {
+            CompiledFSM a = Machines.random(random, "ABC", 1 + random.nextInt(8), 0.8);
+            CompiledFSM b = Machines.random(random, "BCD", 1 + random.nextInt(8), 0.8);
+            CompiledFSM product = Product.combine(a, b, Product.Op.UNION, 1).fsm;
+            for (String input : Machines.inputs(random, "ABCD")) {
+                assertEquals(a.accepts(input) || b.accepts(input), product.accepts(input),
+                        "pair " + n + ", input '" + input + "'");
+            }
+        }
+    }
+
+    @Test
+    void complementAcceptsWhatTheMachineRejects() {
+        Random random = new Random(19);
+        for (int n = 0; n < MACHINES; n++) {
+            CompiledFSM a = Machines.random(random, "ABC", 1 + random.nextInt(8), 0.6);
+            CompiledFSM complement = Product.combine(a, null, Product.Op.COMPLEMENT, 1).fsm;
+            for (String input : Machines.inputs(random, "ABC")) {
+                assertEquals(!a.accepts(input), complement.accepts(input), "machine " + n + ", input '" + input + "'");
+            }
+            // Symbols the machine does not declare are still rejected
+            assertEquals(false, complement.accepts("D"));
+        }
+    }
+
+    @Test
+    void compareFindsADifferenceIffTheLanguagesDiffer() {
+        Random random = new Random(20);
+        for (int n = 0; n < MACHINES; n++) {
+            CompiledFSM a = Machines.random(random, "AB", 1 + random.nextInt(5), 0.8);
+            CompiledFSM b = Machines.random(random, "AB", 1 + random.nextInt(5), 0.8);
+            assertTrue(Product.compare(a, Minimizer.minimize(a, 1).fsm, false).equal, "machine " + n);
+
+            Product.Difference d = Product.compare(a, b, false);
+            if (d.equal) {
+                assertNull(d.counterexample);
+                for (String input : Machines.allInputs("AB", 8)) {
+                    assertEquals(a.accepts(input), b.accepts(input), "pair " + n + ", input '" + input + "'");
+                }
+            } else {
+                assertNotEquals(a.accepts(d.counterexample), b.accepts(d.counterexample), "pair " + n);
+                assertEquals(a.accepts(d.counterexample), d.acceptedByFirst, "pair " + n);
+            }
+        }
+    }
+}